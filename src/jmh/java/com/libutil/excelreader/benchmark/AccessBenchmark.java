@@ -0,0 +1,144 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Takashi Harano
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.libutil.excelreader.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.libutil.excelreader.ExcelLoader;
+import com.libutil.excelreader.ExcelStringUtil;
+import com.libutil.excelreader.SheetRow;
+import com.libutil.excelreader.SheetValues;
+
+/**
+ * Measures reading the values out of the loaded rows. Each invocation walks
+ * all rows of the TALL_NARROW sheet.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class AccessBenchmark {
+
+  private SheetValues values;
+  private String[] colNames;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    File dir = Files.createTempDirectory("excelreader-bench").toFile();
+    File file = BenchmarkBooks.write(dir, BenchmarkBooks.Shape.TALL_NARROW);
+    try {
+      values = ExcelLoader.loadSheetValues(file.getPath(), BenchmarkBooks.SHEET_NAME);
+    } finally {
+      file.delete();
+      dir.delete();
+    }
+    colNames = new String[16384];
+    for (int i = 0; i < colNames.length; i++) {
+      colNames[i] = ExcelStringUtil.xlscol(i + 1);
+    }
+  }
+
+  @Benchmark
+  public void getValue(Blackhole bh) {
+    for (SheetRow row : values) {
+      bh.consume(row.getValue(1));
+      bh.consume(row.getValue(2));
+      bh.consume(row.getValue(3));
+    }
+  }
+
+  @Benchmark
+  public void getValueByColumnName(Blackhole bh) {
+    for (SheetRow row : values) {
+      bh.consume(row.getValue("A"));
+      bh.consume(row.getValue("B"));
+      bh.consume(row.getValue("C"));
+    }
+  }
+
+  @Benchmark
+  public void getIntValue(Blackhole bh) {
+    for (SheetRow row : values) {
+      bh.consume(row.getIntValue(1));
+      bh.consume(row.getIntValue(4));
+    }
+  }
+
+  @Benchmark
+  public void getLongValue(Blackhole bh) {
+    for (SheetRow row : values) {
+      bh.consume(row.getLongValue(1));
+      bh.consume(row.getLongValue(4));
+    }
+  }
+
+  @Benchmark
+  public void getDoubleValue(Blackhole bh) {
+    for (SheetRow row : values) {
+      bh.consume(row.getDoubleValue(2));
+      bh.consume(row.getDoubleValue(5));
+    }
+  }
+
+  @Benchmark
+  public void isEmpty(Blackhole bh) {
+    for (SheetRow row : values) {
+      bh.consume(row.isEmpty(3));
+      bh.consume(row.isEmpty(6));
+    }
+  }
+
+  @Benchmark
+  public void xlscolToIndex(Blackhole bh) {
+    for (String colName : colNames) {
+      bh.consume(ExcelStringUtil.xlscol(colName));
+    }
+  }
+
+  @Benchmark
+  public void xlscolToName(Blackhole bh) {
+    for (int i = 1; i <= colNames.length; i++) {
+      bh.consume(ExcelStringUtil.xlscol(i));
+    }
+  }
+
+}
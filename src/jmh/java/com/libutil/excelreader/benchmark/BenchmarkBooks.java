@@ -0,0 +1,73 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Takashi Harano
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.libutil.excelreader.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+
+import com.libutil.excelreader.test.generator.WorkbookGenerator;
+
+/**
+ * Writes the workbooks used by the benchmarks.
+ */
+public class BenchmarkBooks {
+
+  public static final String SHEET_NAME = "Sheet1";
+
+  /**
+   * The shapes of the benchmark sheets.
+   */
+  public enum Shape {
+    /** Many rows of a few columns */
+    TALL_NARROW(new WorkbookGenerator().setRowCount(50000).setColCount(6).setTypeMix(1, 0, 0, 0, 0)),
+    /** Many columns of which only a few are filled */
+    WIDE_SPARSE(new WorkbookGenerator().setRowCount(2000).setColCount(400).setFillRatio(0.05)),
+    /** Half of the cells are formulas */
+    FORMULA_HEAVY(new WorkbookGenerator().setRowCount(10000).setColCount(10).setFormulaRatio(0.5)),
+    /** Every cell has a font and fill color */
+    STYLE_HEAVY(new WorkbookGenerator().setRowCount(10000).setColCount(10).setStyleDensity(1.0));
+
+    final WorkbookGenerator generator;
+
+    Shape(WorkbookGenerator generator) {
+      this.generator = generator;
+    }
+  }
+
+  /**
+   * Writes the workbook of the shape into the directory.
+   *
+   * @param dir
+   *          The directory to write the file
+   * @param shape
+   *          The shape of the sheet
+   * @return The written file
+   * @throws IOException
+   *           If an I/O error occurs
+   */
+  public static File write(File dir, Shape shape) throws IOException {
+    return shape.generator.write(new File(dir, shape.name().toLowerCase() + ".xlsx"));
+  }
+
+}
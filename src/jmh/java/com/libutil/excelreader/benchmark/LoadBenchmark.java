@@ -0,0 +1,112 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Takashi Harano
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.libutil.excelreader.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.libutil.excelreader.ExcelLoader;
+import com.libutil.excelreader.SheetValues;
+
+/**
+ * Measures opening the books and loading the sheets.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class LoadBenchmark {
+
+  @Param({"TALL_NARROW", "WIDE_SPARSE", "FORMULA_HEAVY", "STYLE_HEAVY"})
+  public BenchmarkBooks.Shape shape;
+
+  private File dir;
+  private String filePath;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    dir = Files.createTempDirectory("excelreader-bench").toFile();
+    filePath = BenchmarkBooks.write(dir, shape).getPath();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    File[] files = dir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    dir.delete();
+  }
+
+  @Benchmark
+  public XSSFWorkbook openBook() throws IOException {
+    XSSFWorkbook workbook = ExcelLoader.openBook(filePath);
+    workbook.close();
+    return workbook;
+  }
+
+  @Benchmark
+  public SheetValues loadSheetValuesFromWorkbook() throws IOException {
+    try (XSSFWorkbook workbook = ExcelLoader.openBook(filePath)) {
+      return ExcelLoader.loadSheetValues(workbook, BenchmarkBooks.SHEET_NAME);
+    }
+  }
+
+  @Benchmark
+  public SheetValues loadSheetValues() throws IOException {
+    return ExcelLoader.loadSheetValues(filePath, BenchmarkBooks.SHEET_NAME);
+  }
+
+  @Benchmark
+  public SheetValues loadSheetValuesLazy() throws IOException {
+    return ExcelLoader.loadSheetValues(filePath, BenchmarkBooks.SHEET_NAME, 0, 0, true);
+  }
+
+  @Benchmark
+  public String[] getSheetNames() {
+    return ExcelLoader.getSheetNames(filePath);
+  }
+
+}
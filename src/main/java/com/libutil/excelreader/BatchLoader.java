@@ -0,0 +1,360 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Takashi Harano
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.libutil.excelreader;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Loads all sheets of many Excel files concurrently and returns the books in
+ * the order they finish.<br>
+ * The books are loaded on virtual threads when the runtime has them (Java 21
+ * or later), or on a pool of platform threads otherwise. At most
+ * <code>parallelism</code> books are loaded at a time, and the books are not
+ * started while the estimated memory of the books in flight, i.e. being loaded
+ * or finished but not taken by next() yet, would exceed the memory budget. The
+ * memory of a book is estimated by the uncompressed size of its parts. A book
+ * larger than the budget is loaded alone.<br>
+ * The iterator must be used from one thread. Closing it stops starting the
+ * remaining books.
+ *
+ * <pre>
+ * try (BatchLoader loader = ExcelLoader.loadBooks("data/*.xlsx")) {
+ *   while (loader.hasNext()) {
+ *     BatchLoader.Result result = loader.next();
+ *     ...
+ *   }
+ * }
+ * </pre>
+ */
+public class BatchLoader implements Iterator<BatchLoader.Result>, Closeable {
+
+  private final Deque<File> pendingFiles;
+  private final int parallelism;
+  private final long memoryBudget;
+  private final ExecutorService executor;
+  private final BlockingQueue<Result> results = new LinkedBlockingQueue<>();
+
+  private int remaining;
+  private int inFlight;
+  private long inFlightMemory;
+  private long headMemory = -1;
+  private boolean closed;
+
+  /**
+   * Creates the loader of the files.
+   *
+   * @param files
+   *          The Excel files
+   * @param parallelism
+   *          The maximum number of the books loaded at a time
+   * @param memoryBudget
+   *          The maximum estimated bytes of the books in flight
+   */
+  BatchLoader(List<File> files, int parallelism, long memoryBudget) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("parallelism must be greater than 0: " + parallelism);
+    }
+    if (memoryBudget < 1) {
+      throw new IllegalArgumentException("memoryBudget must be greater than 0: " + memoryBudget);
+    }
+    this.pendingFiles = new ArrayDeque<>(files);
+    this.parallelism = parallelism;
+    this.memoryBudget = memoryBudget;
+    this.remaining = files.size();
+    this.executor = newExecutor(parallelism);
+  }
+
+  /**
+   * Returns whether there are books that have not been returned yet.
+   *
+   * @return true if next() returns a book
+   */
+  @Override
+  public boolean hasNext() {
+    return remaining > 0;
+  }
+
+  /**
+   * Waits for the next book to finish and returns it.
+   *
+   * @return the result of the book
+   * @throws NoSuchElementException
+   *           If all books have been returned or the loader is closed
+   */
+  @Override
+  public Result next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    dispatch();
+    Result result;
+    try {
+      result = results.take();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while waiting for the books", e);
+    }
+    inFlight--;
+    inFlightMemory -= result.estimatedMemory;
+    remaining--;
+    dispatch();
+    return result;
+  }
+
+  /**
+   * Stops starting the remaining books. The books being loaded are finished in
+   * the background and discarded.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    pendingFiles.clear();
+    remaining = 0;
+    executor.shutdown();
+  }
+
+  private void dispatch() {
+    while (!closed && !pendingFiles.isEmpty() && (inFlight < parallelism)) {
+      File file = pendingFiles.peek();
+      if (headMemory < 0) {
+        // Kept while the file waits for the budget.
+        headMemory = estimateMemory(file);
+      }
+      long memory = headMemory;
+      if ((inFlight > 0) && (inFlightMemory + memory > memoryBudget)) {
+        break;
+      }
+      pendingFiles.poll();
+      headMemory = -1;
+      inFlight++;
+      inFlightMemory += memory;
+      executor.execute(() -> load(file, memory));
+    }
+  }
+
+  /**
+   * Loads the book and posts exactly one result for it, even if an Error is
+   * thrown, so that next() does not wait forever.
+   */
+  private void load(File file, long estimatedMemory) {
+    Map<String, SheetValues> sheets = null;
+    Throwable error = null;
+    try {
+      sheets = StreamingSheetLoader.loadAllSheets(file, Runnable::run, null);
+    } catch (Throwable t) {
+      error = t;
+    } finally {
+      results.add(new Result(file, sheets, error, estimatedMemory));
+    }
+  }
+
+  /**
+   * Estimates the memory to load the book by the uncompressed size of the
+   * parts.
+   */
+  private static long estimateMemory(File file) {
+    long size = 0;
+    try (ZipFile zip = new ZipFile(file)) {
+      Enumeration<? extends ZipEntry> entries = zip.entries();
+      while (entries.hasMoreElements()) {
+        ZipEntry entry = entries.nextElement();
+        long entrySize = entry.getSize();
+        if (entrySize < 0) {
+          entrySize = entry.getCompressedSize();
+        }
+        if (entrySize > 0) {
+          size += entrySize;
+        }
+      }
+    } catch (IOException e) {
+      // The error will be reported when it is loaded.
+      size = file.length();
+    }
+    return size;
+  }
+
+  /**
+   * Creates the executor of virtual threads if available, otherwise a pool of
+   * daemon threads.
+   */
+  private static ExecutorService newExecutor(int parallelism) {
+    try {
+      Object executor = Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+      return (ExecutorService) executor;
+    } catch (ReflectiveOperationException e) {
+      // Java 20 or earlier
+    }
+    AtomicInteger count = new AtomicInteger();
+    ThreadFactory threadFactory = (r) -> {
+      Thread thread = new Thread(r, "excelreader-batch-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+    return Executors.newFixedThreadPool(parallelism, threadFactory);
+  }
+
+  /**
+   * Returns the Excel files in the directory or matching the glob pattern.<br>
+   * For a directory, the .xlsx files directly in it are returned. A glob
+   * pattern is matched against the paths under the directory before the first
+   * component with the special characters, e.g. data/2024-*&#47;*.xlsx or
+   * data/**&#47;*.xlsx. The lock files of Excel (~$*) are excluded.
+   *
+   * @param pathOrGlob
+   *          The directory or the glob pattern
+   * @return the files sorted by the path
+   * @throws IOException
+   *           If an I/O error occurs
+   */
+  static List<File> listFiles(String pathOrGlob) throws IOException {
+    Path path = Paths.get(pathOrGlob);
+    Path baseDir;
+    PathMatcher matcher;
+    PathMatcher flatMatcher = null;
+    int maxDepth;
+    if (Files.isDirectory(path)) {
+      baseDir = path;
+      matcher = FileSystems.getDefault().getPathMatcher("glob:*.xlsx");
+      maxDepth = 1;
+    } else {
+      baseDir = getBaseDir(path);
+      matcher = FileSystems.getDefault().getPathMatcher("glob:" + pathOrGlob);
+      maxDepth = Integer.MAX_VALUE;
+      String sep = path.getFileSystem().getSeparator();
+      String doubleStar = sep + "**" + sep;
+      if (pathOrGlob.contains(doubleStar)) {
+        // "dir/**/*.xlsx" does not match the files directly in dir.
+        flatMatcher = FileSystems.getDefault().getPathMatcher("glob:" + pathOrGlob.replace(doubleStar, sep));
+      }
+    }
+
+    List<File> files = new ArrayList<>();
+    if (!Files.isDirectory(baseDir)) {
+      return files;
+    }
+    try (Stream<Path> paths = Files.walk(baseDir, maxDepth)) {
+      Iterator<Path> it = paths.iterator();
+      while (it.hasNext()) {
+        Path p = it.next();
+        Path target = (maxDepth == 1) ? p.getFileName() : p;
+        if ((target == null) || !Files.isRegularFile(p)) {
+          continue;
+        }
+        if (!matcher.matches(target) && ((flatMatcher == null) || !flatMatcher.matches(target))) {
+          continue;
+        }
+        if (p.getFileName().toString().startsWith("~$")) {
+          continue;
+        }
+        files.add(p.toFile());
+      }
+    }
+    Collections.sort(files);
+    return files;
+  }
+
+  private static Path getBaseDir(Path pattern) {
+    Path baseDir = pattern.getRoot();
+    for (Path name : pattern) {
+      String s = name.toString();
+      if ((s.indexOf('*') >= 0) || (s.indexOf('?') >= 0) || (s.indexOf('[') >= 0) || (s.indexOf('{') >= 0)) {
+        break;
+      }
+      baseDir = (baseDir == null) ? name : baseDir.resolve(name);
+    }
+    return (baseDir == null) ? Paths.get("") : baseDir;
+  }
+
+  /**
+   * The loaded book or the error.
+   */
+  public static class Result {
+    private final File file;
+    private final Map<String, SheetValues> sheets;
+    private final Throwable error;
+    private final long estimatedMemory;
+
+    Result(File file, Map<String, SheetValues> sheets, Throwable error, long estimatedMemory) {
+      this.file = file;
+      this.sheets = sheets;
+      this.error = error;
+      this.estimatedMemory = estimatedMemory;
+    }
+
+    /**
+     * Returns the Excel file.
+     *
+     * @return the file
+     */
+    public File getFile() {
+      return file;
+    }
+
+    /**
+     * Returns the values of all sheets.
+     *
+     * @return the map of the sheet name and the values in the order of the book
+     *         / null if the book failed to load
+     */
+    public Map<String, SheetValues> getSheets() {
+      return sheets;
+    }
+
+    /**
+     * Returns the error of the loading.
+     *
+     * @return the IOException, RuntimeException or Error / null if the book was
+     *         loaded
+     */
+    public Throwable getError() {
+      return error;
+    }
+  }
+
+}
@@ -0,0 +1,507 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Takashi Harano
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.libutil.excelreader;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.openxml4j.opc.PackageRelationship;
+import org.apache.poi.openxml4j.opc.PackageRelationshipTypes;
+import org.apache.poi.openxml4j.opc.TargetMode;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.model.ThemesTable;
+import org.apache.poi.xssf.usermodel.XSSFRelation;
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * The Excel file opened as a package for the streaming read.<br>
+ * The book structure, the shared strings and the styles are read once when the
+ * package is opened, and the sheets are read from it on demand. The sheets can
+ * be read concurrently from multiple threads.
+ */
+class BookPackage implements Closeable {
+
+  private static final String NS_RELATIONSHIPS = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+
+  private final File file;
+  private final OPCPackage pkg;
+  private final PackagePart workbookPart;
+  private final List<String> sheetNames;
+  private final List<String> relIds;
+  private final boolean date1904;
+  // The entry names of the parts shared by the sheets
+  private final List<String> sharedEntryNames = new ArrayList<>();
+  private final SharedStringCache sharedStrings;
+  private final StylesTable stylesTable;
+  private final CellValueFormatter formatter = new CellValueFormatter();
+
+  // The times of the book phases in nanoseconds
+  private final long openTime;
+  private final long sharedStringsTime;
+  private final long stylesTableTime;
+
+  private BookPackage(File file, OPCPackage pkg, long t0) throws IOException, OpenXML4JException, SAXException {
+    this.file = file;
+    this.pkg = pkg;
+
+    XSSFReader reader = new XSSFReader(pkg);
+    WorkbookContentHandler workbookHandler = new WorkbookContentHandler();
+    try (InputStream is = reader.getWorkbookData()) {
+      parse(is, workbookHandler);
+    }
+    this.workbookPart = pkg.getPartsByRelationshipType(PackageRelationshipTypes.CORE_DOCUMENT).get(0);
+    this.sheetNames = workbookHandler.names;
+    this.relIds = workbookHandler.relIds;
+    this.date1904 = workbookHandler.date1904;
+    long t1 = System.nanoTime();
+
+    PackagePart sharedStringsPart = getSharedPart(XSSFRelation.SHARED_STRINGS);
+    if (sharedStringsPart == null) {
+      this.sharedStrings = new SharedStringCache(new ReadOnlySharedStringsTable(pkg, false));
+    } else {
+      this.sharedStrings = new SharedStringCache(new ReadOnlySharedStringsTable(sharedStringsPart, false));
+    }
+    long t2 = System.nanoTime();
+    this.stylesTable = readStylesTable();
+    long t3 = System.nanoTime();
+
+    this.openTime = t1 - t0;
+    this.sharedStringsTime = t2 - t1;
+    this.stylesTableTime = t3 - t2;
+  }
+
+  /**
+   * Opens the Excel file.
+   *
+   * @param file
+   *          The Excel file
+   * @return the opened package
+   * @throws IOException
+   *           If an I/O error occurs
+   */
+  static BookPackage open(File file) throws IOException {
+    if (!file.exists()) {
+      throw new RuntimeException("Excel file not found: file=" + file);
+    }
+
+    Object event = LoadingEvents.beginWorkbookOpen(file.getPath(), true);
+    long t0 = System.nanoTime();
+    OPCPackage pkg;
+    try {
+      pkg = OPCPackage.open(file, PackageAccess.READ);
+    } catch (Exception e) {
+      throw new IOException("Failed to open the Excel file: file=" + file, e);
+    }
+
+    try {
+      BookPackage book = new BookPackage(file, pkg, t0);
+      if (event != null) {
+        LoadingEvents.endWorkbookOpen(event, book.sheetNames.size());
+      }
+      return book;
+    } catch (Exception e) {
+      pkg.revert();
+      if (e instanceof IOException) {
+        throw (IOException) e;
+      }
+      throw new IOException("Failed to read the Excel file: file=" + file, e);
+    }
+  }
+
+  /**
+   * Returns the file of the book.
+   *
+   * @return the file
+   */
+  File getFile() {
+    return file;
+  }
+
+  /**
+   * Returns the sheet names of the book.
+   *
+   * @return the sheet names in the order of the book
+   */
+  List<String> getSheetNames() {
+    return sheetNames;
+  }
+
+  /**
+   * Returns whether the book uses the 1904 date system.
+   *
+   * @return true if the dates are based on 1904
+   */
+  boolean isDate1904() {
+    return date1904;
+  }
+
+  /**
+   * Returns the zip entry name of the sheet part.
+   *
+   * @param sheetName
+   *          The sheet name
+   * @return the entry name like "xl/worksheets/sheet1.xml"
+   * @throws IOException
+   *           If an I/O error occurs
+   */
+  String getSheetEntryName(String sheetName) throws IOException {
+    return getEntryName(getSheetPart(sheetName));
+  }
+
+  /**
+   * Returns the zip entry names of the parts shared by the sheets, i.e. the
+   * shared strings, the styles and the theme that were read for the book.
+   *
+   * @return the entry names like "xl/sharedStrings.xml"
+   */
+  List<String> getSharedEntryNames() {
+    return sharedEntryNames;
+  }
+
+  /**
+   * Creates the metrics of a sheet load with the times of the book phases.
+   *
+   * @return the metrics
+   */
+  LoadingMetrics newMetrics() {
+    LoadingMetrics metrics = new LoadingMetrics();
+    metrics.openTime = openTime;
+    metrics.sharedStringsTime = sharedStringsTime;
+    metrics.stylesTableTime = stylesTableTime;
+    return metrics;
+  }
+
+  /**
+   * Reads an Excel sheet and passes the rows to the handler one by one.
+   *
+   * @param sheetName
+   *          The sheet name
+   * @param lastRowNum
+   *          Last line to load (1-1048576) / 0 for auto detection
+   * @param lastCellNum
+   *          Last column to load (1-16384) / 0 for auto detection
+   * @param columns
+   *          The flags of the columns to load / null for all columns
+   * @param lazy
+   *          true to resolve the values, formulas and colors of the cells when
+   *          they are accessed
+   * @param rowHandler
+   *          The handler to receive the rows
+   * @param metrics
+   *          The metrics of the load / null
+   * @throws IOException
+   *           If an I/O error occurs
+   */
+  void readSheet(String sheetName, int lastRowNum, int lastCellNum, boolean[] columns, boolean lazy, RowHandler rowHandler, LoadingMetrics metrics) throws IOException {
+    PackagePart sheetPart = getSheetPart(sheetName);
+    Object event = LoadingEvents.beginSheetLoad(file.getPath(), sheetName);
+    if ((event != null) && (metrics == null)) {
+      // Counts the rows and cells for the event.
+      metrics = new LoadingMetrics();
+    }
+    long t0 = (metrics == null) ? 0 : System.nanoTime();
+
+    LoadingEvents.CellFormatTrace formatTrace = LoadingEvents.getCellFormatTrace(file.getPath(), sheetName);
+    CellStyleResolver styleResolver = new CellStyleResolver(stylesTable, formatter, date1904, formatTrace);
+    SheetContentHandler sheetHandler = new SheetContentHandler(sharedStrings, styleResolver, lastRowNum, lastCellNum, columns, lazy, rowHandler, metrics);
+    CountingInputStream counter = null;
+    try (InputStream is = sheetPart.getInputStream()) {
+      InputStream in = is;
+      if (metrics != null) {
+        counter = new CountingInputStream(is);
+        in = counter;
+      }
+      parse(in, sheetHandler);
+    } catch (SAXException e) {
+      throw new IOException("Failed to read the sheet: file=" + file + " sheet=" + sheetName, e);
+    }
+    if (metrics != null) {
+      metrics.bytesInflated += counter.count;
+      metrics.sheetTime += System.nanoTime() - t0;
+    }
+    if (event != null) {
+      LoadingEvents.endSheetLoad(event, metrics.rowCount, metrics.cellCount);
+    }
+  }
+
+  /**
+   * Reads the metadata of a sheet from the start of the sheet part.
+   *
+   * @param sheetName
+   *          The sheet name
+   * @return the sheet info
+   * @throws IOException
+   *           If an I/O error occurs
+   */
+  SheetInfo getSheetInfo(String sheetName) throws IOException {
+    int index = indexOfSheet(sheetName);
+    PackagePart sheetPart = getSheetPart(workbookPart, relIds.get(index), sheetName);
+    return probeSheet(sheetPart, sheetNames.get(index));
+  }
+
+  /**
+   * Reads the metadata of all sheets of the Excel file.<br>
+   * Only xl/workbook.xml and the start of the sheet parts are read. The shared
+   * strings and the styles are not.
+   *
+   * @param file
+   *          The Excel file
+   * @return the sheet info in the order of the book
+   * @throws IOException
+   *           If an I/O error occurs
+   */
+  static List<SheetInfo> probeSheets(File file) throws IOException {
+    if (!file.exists()) {
+      throw new RuntimeException("Excel file not found: file=" + file);
+    }
+    OPCPackage pkg;
+    try {
+      pkg = OPCPackage.open(file, PackageAccess.READ);
+    } catch (Exception e) {
+      throw new IOException("Failed to open the Excel file: file=" + file, e);
+    }
+    try {
+      PackagePart workbookPart = pkg.getPartsByRelationshipType(PackageRelationshipTypes.CORE_DOCUMENT).get(0);
+      WorkbookContentHandler workbookHandler = new WorkbookContentHandler();
+      try (InputStream is = workbookPart.getInputStream()) {
+        parse(is, workbookHandler);
+      }
+      List<SheetInfo> infos = new ArrayList<>(workbookHandler.names.size());
+      for (int i = 0; i < workbookHandler.names.size(); i++) {
+        String sheetName = workbookHandler.names.get(i);
+        PackagePart sheetPart = getSheetPart(workbookPart, workbookHandler.relIds.get(i), sheetName);
+        infos.add(probeSheet(sheetPart, sheetName));
+      }
+      return infos;
+    } catch (IOException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new IOException("Failed to read the Excel file: file=" + file, e);
+    } finally {
+      pkg.revert();
+    }
+  }
+
+  private static SheetInfo probeSheet(PackagePart sheetPart, String sheetName) throws IOException {
+    SheetInfoContentHandler handler = new SheetInfoContentHandler();
+    try (InputStream is = sheetPart.getInputStream()) {
+      parse(is, handler);
+    } catch (SAXException e) {
+      throw new IOException("Failed to read the sheet: sheet=" + sheetName, e);
+    }
+    return new SheetInfo(sheetName, handler.dimension, handler.tabColorRGBHex, sheetPart.getSize());
+  }
+
+  private StylesTable readStylesTable() throws IOException, InvalidFormatException {
+    PackagePart stylesPart = getSharedPart(XSSFRelation.STYLES);
+    if (stylesPart == null) {
+      return null;
+    }
+    StylesTable styles = new StylesTable(stylesPart);
+    PackagePart themePart = getSharedPart(XSSFRelation.THEME);
+    if (themePart != null) {
+      styles.setTheme(new ThemesTable(themePart));
+    }
+    return styles;
+  }
+
+  /**
+   * Returns the part that the workbook refers to by the relationship, or the
+   * first part of the content type as XSSFReader finds it, and adds the name
+   * to the shared entry names.
+   */
+  private PackagePart getSharedPart(XSSFRelation relation) throws InvalidFormatException {
+    PackagePart part = null;
+    for (PackageRelationship rel : workbookPart.getRelationshipsByType(relation.getRelation())) {
+      if (rel.getTargetMode() == TargetMode.INTERNAL) {
+        part = workbookPart.getRelatedPart(rel);
+        if (part != null) {
+          break;
+        }
+      }
+    }
+    if (part == null) {
+      List<PackagePart> parts = pkg.getPartsByContentType(relation.getContentType());
+      if (parts.isEmpty()) {
+        return null;
+      }
+      part = parts.get(0);
+    }
+    sharedEntryNames.add(getEntryName(part));
+    return part;
+  }
+
+  private static String getEntryName(PackagePart part) {
+    String partName = part.getPartName().getName();
+    return partName.startsWith("/") ? partName.substring(1) : partName;
+  }
+
+  private PackagePart getSheetPart(String sheetName) throws IOException {
+    int index = indexOfSheet(sheetName);
+    return getSheetPart(workbookPart, relIds.get(index), sheetName);
+  }
+
+  private int indexOfSheet(String sheetName) {
+    // Same as XSSFWorkbook#getSheet(), the name is case-insensitive.
+    for (int i = 0; i < sheetNames.size(); i++) {
+      if (sheetNames.get(i).equalsIgnoreCase(sheetName)) {
+        return i;
+      }
+    }
+    throw new RuntimeException("Sheet not found: " + sheetName);
+  }
+
+  private static PackagePart getSheetPart(PackagePart workbookPart, String relId, String sheetName) throws IOException {
+    PackagePart part;
+    try {
+      PackageRelationship rel = workbookPart.getRelationship(relId);
+      part = workbookPart.getRelatedPart(rel);
+    } catch (Exception e) {
+      throw new IOException("Sheet part not found: sheet=" + sheetName, e);
+    }
+    return part;
+  }
+
+  /**
+   * Closes the package without saving.
+   */
+  @Override
+  public void close() {
+    pkg.revert();
+  }
+
+  private static void parse(InputStream is, ContentHandler handler) throws IOException, SAXException {
+    XMLReader parser;
+    try {
+      parser = XMLHelper.newXMLReader();
+    } catch (Exception e) {
+      throw new IOException("Failed to create the XML reader", e);
+    }
+    parser.setContentHandler(handler);
+    try {
+      parser.parse(new InputSource(is));
+    } catch (SheetContentHandler.StopParsingException e) {
+      // The rest of the part is not needed.
+    }
+  }
+
+  /**
+   * Counts the bytes read from the part.
+   */
+  private static class CountingInputStream extends FilterInputStream {
+    private long count;
+
+    CountingInputStream(InputStream in) {
+      super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b >= 0) {
+        count++;
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int n = super.read(b, off, len);
+      if (n > 0) {
+        count += n;
+      }
+      return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      long skipped = super.skip(n);
+      count += skipped;
+      return skipped;
+    }
+  }
+
+  /**
+   * Reads the elements before the cells of the sheet part, and stops at the
+   * cells.
+   */
+  private static class SheetInfoContentHandler extends DefaultHandler {
+    private String dimension;
+    private String tabColorRGBHex;
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+      if ("dimension".equals(localName)) {
+        dimension = attributes.getValue("ref");
+      } else if ("tabColor".equals(localName)) {
+        String rgb = attributes.getValue("rgb");
+        if ((rgb != null) && (rgb.length() == 8)) {
+          // ARGB
+          tabColorRGBHex = rgb.substring(2);
+        }
+      } else if ("sheetData".equals(localName)) {
+        throw new SheetContentHandler.StopParsingException();
+      }
+    }
+  }
+
+  /**
+   * Reads the sheet list and the book properties from xl/workbook.xml.
+   */
+  private static class WorkbookContentHandler extends DefaultHandler {
+    private final List<String> names = new ArrayList<>();
+    private final List<String> relIds = new ArrayList<>();
+    private boolean date1904;
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes attributes) {
+      if ("sheet".equals(localName)) {
+        names.add(attributes.getValue("name"));
+        relIds.add(attributes.getValue(NS_RELATIONSHIPS, "id"));
+      } else if ("workbookPr".equals(localName)) {
+        String v = attributes.getValue("date1904");
+        date1904 = "1".equals(v) || "true".equals(v);
+      }
+    }
+  }
+
+}
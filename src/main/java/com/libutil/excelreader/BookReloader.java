@@ -0,0 +1,395 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Takashi Harano
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.libutil.excelreader;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reloads the objects loaded from the Excel files when the files are changed.
+ * <br>
+ * The directories of the watched files are watched with the WatchService, and
+ * a changed file is loaded again on the background thread after it has not
+ * been changed for the quiet period, so that the file is not read while it is
+ * being saved. The new object replaces the current one atomically when it has
+ * been loaded, so the readers never wait for the loading and never see an
+ * object that is half-loaded. If the file cannot be loaded, the current object
+ * is kept and the file is loaded again on the next change.
+ *
+ * <pre>
+ * BookReloader reloader = new BookReloader(listener, 500);
+ * BookReloader.Reloadable&lt;Book1&gt; book1 = reloader.watch("Book1.xlsx", Book1::new);
+ * ...
+ * Sheet1ValuesMap values = book1.get().getAllValues();
+ * </pre>
+ */
+public class BookReloader implements Closeable {
+
+  private static final long DEFAULT_QUIET_MILLIS = 500;
+
+  private final WatchService watchService;
+  private final LoadingListener listener;
+  private final long quietMillis;
+  private final Thread thread;
+
+  // The watched directories and files (guarded by this)
+  private final Map<WatchKey, Path> dirs = new HashMap<>();
+  private final Map<Path, List<Reloadable<?>>> files = new HashMap<>();
+
+  private volatile boolean closed;
+
+  /**
+   * The function that loads the object from the Excel file.
+   *
+   * @param <T>
+   *          The type of the loaded object
+   */
+  public interface Loader<T> {
+    /**
+     * Loads the object from the file.
+     *
+     * @param filePath
+     *          The Excel file path
+     * @return the loaded object
+     * @throws IOException
+     *           If an I/O error occurs
+     */
+    T load(String filePath) throws IOException;
+  }
+
+  /**
+   * Creates the reloader with the quiet period of 500 milliseconds.
+   *
+   * @throws IOException
+   *           If an I/O error occurs
+   */
+  public BookReloader() throws IOException {
+    this(null, DEFAULT_QUIET_MILLIS);
+  }
+
+  /**
+   * Creates the reloader.
+   *
+   * @param listener
+   *          The listener to be notified of the start and completion of each
+   *          reload / null. Each onLoadStart is followed by onLoadComplete, or
+   *          by onReloadFailed if it is a ReloadListener and the reload failed.
+   *          A listener that is not a ReloadListener receives onLoadComplete
+   *          also for a failed reload. It is called from the background
+   *          thread, or from the thread that calls Reloadable.reload().
+   * @param quietMillis
+   *          The time in milliseconds to wait after the last change of a file
+   *          before loading it
+   * @throws IOException
+   *           If an I/O error occurs
+   */
+  public BookReloader(LoadingListener listener, long quietMillis) throws IOException {
+    if (quietMillis < 0) {
+      throw new IllegalArgumentException("quietMillis must not be negative: " + quietMillis);
+    }
+    this.watchService = FileSystems.getDefault().newWatchService();
+    this.listener = listener;
+    this.quietMillis = quietMillis;
+    this.thread = new Thread(this::run, "excelreader-reloader");
+    this.thread.setDaemon(true);
+    this.thread.start();
+  }
+
+  /**
+   * Loads the object from the file and watches the file.<br>
+   * The first load is done on the calling thread, and an error of it is thrown
+   * from this method.
+   *
+   * @param <T>
+   *          The type of the loaded object
+   * @param filePath
+   *          The Excel file path
+   * @param loader
+   *          The function to load the object from the file
+   * @return the holder of the latest object loaded from the file
+   * @throws IOException
+   *           If an I/O error occurs
+   */
+  public <T> Reloadable<T> watch(String filePath, Loader<T> loader) throws IOException {
+    if (closed) {
+      throw new IllegalStateException("The reloader is closed");
+    }
+    Path file = new File(filePath).getAbsoluteFile().toPath().normalize();
+    Reloadable<T> reloadable = new Reloadable<>(filePath, file.toFile(), loader);
+    reloadable.reload();
+
+    Path dir = file.getParent();
+    WatchKey key = dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+    synchronized (this) {
+      dirs.put(key, dir);
+      List<Reloadable<?>> list = files.get(file);
+      if (list == null) {
+        list = new ArrayList<>();
+        files.put(file, list);
+      }
+      list.add(reloadable);
+    }
+    return reloadable;
+  }
+
+  /**
+   * Stops watching the files. The objects loaded so far can still be used.
+   */
+  @Override
+  public void close() throws IOException {
+    closed = true;
+    watchService.close();
+  }
+
+  private void run() {
+    // The changed files and the time of the last change
+    Map<Path, Long> pending = new LinkedHashMap<>();
+    try {
+      while (!closed) {
+        WatchKey key;
+        if (pending.isEmpty()) {
+          key = watchService.take();
+        } else {
+          long wait = quietMillis - (System.nanoTime() - pending.values().iterator().next()) / 1000000;
+          key = watchService.poll(Math.max(wait, 0), TimeUnit.MILLISECONDS);
+        }
+        if (key != null) {
+          collectChanges(key, pending);
+        }
+        reloadQuietFiles(pending);
+      }
+    } catch (InterruptedException | ClosedWatchServiceException e) {
+      // Closed
+    }
+  }
+
+  private void collectChanges(WatchKey key, Map<Path, Long> pending) {
+    long now = System.nanoTime();
+    synchronized (this) {
+      Path dir = dirs.get(key);
+      for (WatchEvent<?> event : key.pollEvents()) {
+        if (dir == null) {
+          continue;
+        }
+        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+          // The events are lost, so all files in the directory may be changed.
+          for (Path file : files.keySet()) {
+            if (dir.equals(file.getParent())) {
+              pending.remove(file);
+              pending.put(file, now);
+            }
+          }
+          continue;
+        }
+        Path file = dir.resolve((Path) event.context());
+        if (files.containsKey(file)) {
+          // Keeps the files in the order of the last change.
+          pending.remove(file);
+          pending.put(file, now);
+        }
+      }
+    }
+    key.reset();
+  }
+
+  private void reloadQuietFiles(Map<Path, Long> pending) {
+    long now = System.nanoTime();
+    Iterator<Map.Entry<Path, Long>> it = pending.entrySet().iterator();
+    while (it.hasNext()) {
+      Map.Entry<Path, Long> e = it.next();
+      if ((now - e.getValue()) / 1000000 < quietMillis) {
+        break;
+      }
+      it.remove();
+      List<Reloadable<?>> list;
+      synchronized (this) {
+        list = new ArrayList<>(files.get(e.getKey()));
+      }
+      for (Reloadable<?> reloadable : list) {
+        if (closed) {
+          return;
+        }
+        reloadable.reloadIfChanged();
+      }
+    }
+  }
+
+  /**
+   * The holder of the latest object loaded from a file.
+   *
+   * @param <T>
+   *          The type of the loaded object
+   */
+  public class Reloadable<T> {
+    private final String filePath;
+    private final File file;
+    private final Loader<T> loader;
+
+    private volatile T value;
+    private volatile Throwable lastError;
+    private volatile long reloadCount;
+
+    // The file that the current value was loaded from (guarded by this)
+    private long lastModified;
+    private long length;
+
+    private Reloadable(String filePath, File file, Loader<T> loader) {
+      this.filePath = filePath;
+      this.file = file;
+      this.loader = loader;
+    }
+
+    /**
+     * Returns the latest object loaded from the file. It never waits for the
+     * loading in progress.
+     *
+     * @return the object
+     */
+    public T get() {
+      return value;
+    }
+
+    /**
+     * Returns the file path.
+     *
+     * @return the file path
+     */
+    public String getFilePath() {
+      return filePath;
+    }
+
+    /**
+     * Returns the number of the times the object was reloaded after the first
+     * load.
+     *
+     * @return the number of the reloads
+     */
+    public long getReloadCount() {
+      return reloadCount;
+    }
+
+    /**
+     * Returns the error of the last reload that failed.
+     *
+     * @return the error / null if the last reload succeeded
+     */
+    public Throwable getLastError() {
+      return lastError;
+    }
+
+    /**
+     * Loads the object from the file now on the calling thread, regardless of
+     * whether the file has changed. The listener is notified of the start and
+     * the completion or the failure as with the reloads on the changes, except
+     * for the first load.
+     *
+     * @throws IOException
+     *           If an I/O error occurs. The current object is kept.
+     */
+    public synchronized void reload() throws IOException {
+      long modified = file.lastModified();
+      long size = file.length();
+      boolean first = (value == null);
+      if (!first) {
+        onLoadStart();
+      }
+      T newValue;
+      try {
+        newValue = loader.load(filePath);
+        if (newValue == null) {
+          throw new IOException("The loader returned null: file=" + filePath);
+        }
+      } catch (Throwable t) {
+        lastError = t;
+        if (!first) {
+          // Paired with onLoadStart
+          onReloadFailed(t);
+        }
+        throw t;
+      }
+      value = newValue;
+      lastModified = modified;
+      length = size;
+      lastError = null;
+      if (!first) {
+        reloadCount++;
+        onLoadComplete();
+      }
+    }
+
+    private synchronized void reloadIfChanged() {
+      if ((file.lastModified() == lastModified) && (file.length() == length)) {
+        return;
+      }
+      // Any error is caught so that the watcher thread keeps running. The
+      // listener has been notified of it by reload().
+      try {
+        reload();
+      } catch (Throwable t) {
+        // Kept as the last error
+      }
+    }
+
+    private void onReloadFailed(Throwable t) {
+      if (!(listener instanceof ReloadListener)) {
+        // The load has ended without the callback for the failure.
+        onLoadComplete();
+        return;
+      }
+      try {
+        ((ReloadListener) listener).onReloadFailed(filePath, t);
+      } catch (Throwable e) {
+        // Ignored not to hide the error of the reload.
+      }
+    }
+
+    private void onLoadStart() {
+      if (listener != null) {
+        listener.onLoadStart(filePath);
+      }
+    }
+
+    private void onLoadComplete() {
+      if (listener != null) {
+        listener.onLoadComplete(filePath);
+      }
+    }
+  }
+
+}
@@ -12,12 +12,38 @@ public class Cell {
   public static final int CELL_TYPE_NUMERIC = 5;
   public static final int CELL_TYPE_STRING = 6;
 
+  /**
+   * The shared empty cell for the cells that do not exist in the sheet. It
+   * cannot be modified.
+   */
+  static final Cell EMPTY = new EmptyCell();
+
   private XSSFCell xssFcell;
   private int cellType;
   private String value;
+  // The value as a number if it is a plain number text, NaN otherwise.
+  private double number = Double.NaN;
   private String formula;
-  private String fontColorRGBHex;
-  private String backgroundColorRGBHex;
+  // The font and background colors, shared by the cells of the same style
+  private Colors colors;
+
+  public Cell() {
+  }
+
+  private Cell(String value) {
+    this.value = value;
+  }
+
+  /**
+   * Copies the contents of the cell, resolving the lazy ones.
+   */
+  private Cell(Cell src) {
+    this.cellType = src.cellType;
+    this.value = src.getValue();
+    this.number = src.number;
+    this.formula = src.getFormula();
+    this.colors = src.getColors();
+  }
 
   /**
    * Returns the XSSFCell object.
@@ -68,6 +94,7 @@ public class Cell {
    */
   public void setValue(String value) {
     this.value = value;
+    this.number = Double.NaN;
   }
 
   /**
@@ -76,6 +103,10 @@ public class Cell {
    * @return The value of the cell
    */
   public double getDoubleValue() {
+    String value = getValue();
+    if (!Double.isNaN(number)) {
+      return number;
+    }
     double v = ExcelStringUtil.toDouble(value);
     return v;
   }
@@ -88,6 +119,10 @@ public class Cell {
    * @return The value of the cell
    */
   public double getDoubleValue(double defaultValue) {
+    String value = getValue();
+    if (!Double.isNaN(number)) {
+      return number;
+    }
     double v = ExcelStringUtil.toDouble(value, defaultValue);
     return v;
   }
@@ -98,6 +133,10 @@ public class Cell {
    * @return The value of the cell
    */
   public float getFloatValue() {
+    String value = getValue();
+    if (!Double.isNaN(number) && PlainNumber.isIntegral(number)) {
+      return (float) number;
+    }
     float v = ExcelStringUtil.toFloat(value);
     return v;
   }
@@ -110,6 +149,10 @@ public class Cell {
    * @return The value of the cell
    */
   public float getFloatValue(float defaultValue) {
+    String value = getValue();
+    if (!Double.isNaN(number) && PlainNumber.isIntegral(number)) {
+      return (float) number;
+    }
     float v = ExcelStringUtil.toFloat(value, defaultValue);
     return v;
   }
@@ -120,6 +163,10 @@ public class Cell {
    * @return The value of the cell
    */
   public int getIntValue() {
+    String value = getValue();
+    if (!Double.isNaN(number)) {
+      return PlainNumber.toInt(number, 0);
+    }
     int v = ExcelStringUtil.toInteger(value);
     return v;
   }
@@ -132,6 +179,10 @@ public class Cell {
    * @return The value of the cell
    */
   public int getIntValue(int defaultValue) {
+    String value = getValue();
+    if (!Double.isNaN(number)) {
+      return PlainNumber.toInt(number, defaultValue);
+    }
     int v = ExcelStringUtil.toInteger(value, defaultValue);
     return v;
   }
@@ -142,6 +193,10 @@ public class Cell {
    * @return The value of the cell
    */
   public long getLongValue() {
+    String value = getValue();
+    if (!Double.isNaN(number)) {
+      return PlainNumber.toLong(number, 0L);
+    }
     long v = ExcelStringUtil.toLong(value);
     return v;
   }
@@ -154,6 +209,10 @@ public class Cell {
    * @return The value of the cell
    */
   public long getLongValue(long defaultValue) {
+    String value = getValue();
+    if (!Double.isNaN(number)) {
+      return PlainNumber.toLong(number, defaultValue);
+    }
     long v = ExcelStringUtil.toLong(value, defaultValue);
     return v;
   }
@@ -165,11 +224,11 @@ public class Cell {
    *         value is converted to true. The value is case-insensitive.
    */
   public boolean isTrue() {
-    if (value == null) {
+    String v = getValue();
+    if (v == null) {
       return false;
     }
-    value = value.toUpperCase();
-    if (value.equals("") || value.equals("0") || value.equals("FALSE")) {
+    if (v.isEmpty() || "0".equals(v) || v.equalsIgnoreCase("FALSE")) {
       return false;
     }
     return true;
@@ -183,6 +242,7 @@ public class Cell {
    * @return true if the value equals trueValue; false otherwise
    */
   public boolean isTrue(String trueValue) {
+    String value = getValue();
     if (value == null) {
       return false;
     }
@@ -197,6 +257,7 @@ public class Cell {
    * @return true if the cell value is equal to one of trueValues.
    */
   public boolean isTrue(String[] trueValues) {
+    String value = getValue();
     for (int i = 0; i < trueValues.length; i++) {
       String v = trueValues[i];
       if (v == null) {
@@ -219,6 +280,7 @@ public class Cell {
    * @return true if the value is empty
    */
   public boolean isEmpty() {
+    String value = getValue();
     if ((value == null) || ("".equals(value))) {
       return true;
     }
@@ -253,7 +315,7 @@ public class Cell {
    * @return the RGB value in hex string format, eg FF0000.
    */
   public String getFontColorRGBHex() {
-    return fontColorRGBHex;
+    return (colors == null) ? null : colors.fontColorRGBHex;
   }
 
   /**
@@ -263,7 +325,8 @@ public class Cell {
    *          color RGB hex string
    */
   public void setFontColorRGBHex(String fontColorRGBHex) {
-    this.fontColorRGBHex = fontColorRGBHex;
+    String backgroundColorRGBHex = (colors == null) ? null : colors.backgroundColorRGBHex;
+    colors = Colors.of(fontColorRGBHex, backgroundColorRGBHex);
   }
 
   /**
@@ -272,7 +335,7 @@ public class Cell {
    * @return true if the cell has font color
    */
   public boolean hasFontColor() {
-    if ("000000".equals(fontColorRGBHex)) {
+    if ("000000".equals(getFontColorRGBHex())) {
       return false;
     }
     return true;
@@ -284,7 +347,7 @@ public class Cell {
    * @return the RGB value in hex string format, eg FF0000.
    */
   public String getBackgroundColorRGBHex() {
-    return backgroundColorRGBHex;
+    return (colors == null) ? null : colors.backgroundColorRGBHex;
   }
 
   /**
@@ -294,7 +357,27 @@ public class Cell {
    *          color RGB hex string
    */
   public void setBackgroundColorRGBHex(String backgroundColorRGBHex) {
-    this.backgroundColorRGBHex = backgroundColorRGBHex;
+    String fontColorRGBHex = (colors == null) ? null : colors.fontColorRGBHex;
+    colors = Colors.of(fontColorRGBHex, backgroundColorRGBHex);
+  }
+
+  /**
+   * Returns the colors of the cell.
+   *
+   * @return the colors / null if the cell has no colors
+   */
+  Colors getColors() {
+    return colors;
+  }
+
+  /**
+   * Sets the colors shared with the other cells of the same style.
+   *
+   * @param colors
+   *          the colors / null
+   */
+  void setColors(Colors colors) {
+    this.colors = colors;
   }
 
   /**
@@ -303,10 +386,334 @@ public class Cell {
    * @return true if the cell has background color
    */
   public boolean hasBackgroundColor() {
-    if (backgroundColorRGBHex == null) {
+    if (getBackgroundColorRGBHex() == null) {
       return false;
     }
     return true;
   }
 
+  /**
+   * Keeps the value as a number if it is a plain number text, so that the
+   * typed getters return it without parsing the text.
+   */
+  void storeNumber() {
+    number = PlainNumber.parse(value);
+  }
+
+  /**
+   * Returns the copy of the cell that cannot be modified. The lazy contents are
+   * resolved, and the XSSFCell is not kept.
+   *
+   * @param cell
+   *          the cell / null
+   * @return the frozen cell. The shared empty cell and the frozen cells are
+   *         returned as they are.
+   */
+  static Cell freeze(Cell cell) {
+    if ((cell == null) || (cell instanceof EmptyCell) || (cell instanceof FrozenCell)) {
+      return cell;
+    }
+    return new FrozenCell(cell);
+  }
+
+  /**
+   * The empty cell that cannot be modified.
+   */
+  private static class EmptyCell extends Cell {
+    EmptyCell() {
+      super("");
+    }
+
+    @Override
+    long estimateSize() {
+      // Shared by all rows
+      return 0;
+    }
+
+    @Override
+    public void setXssFcell(XSSFCell xssFcell) {
+      throw new UnsupportedOperationException("The empty cell cannot be modified");
+    }
+
+    @Override
+    public void setCellType(int cellType) {
+      throw new UnsupportedOperationException("The empty cell cannot be modified");
+    }
+
+    @Override
+    public void setValue(String value) {
+      throw new UnsupportedOperationException("The empty cell cannot be modified");
+    }
+
+    @Override
+    public void setFormula(String formula) {
+      throw new UnsupportedOperationException("The empty cell cannot be modified");
+    }
+
+    @Override
+    public void setFontColorRGBHex(String fontColorRGBHex) {
+      throw new UnsupportedOperationException("The empty cell cannot be modified");
+    }
+
+    @Override
+    public void setBackgroundColorRGBHex(String backgroundColorRGBHex) {
+      throw new UnsupportedOperationException("The empty cell cannot be modified");
+    }
+  }
+
+  /**
+   * Estimates the heap size of the cell. The colors and the XSSFCell are shared
+   * with the other cells and are not counted. The lazy contents are not
+   * resolved.
+   *
+   * @return the size in bytes
+   */
+  long estimateSize() {
+    return 40 + estimateSize(value) + estimateSize(formula);
+  }
+
+  private static long estimateSize(String s) {
+    return (s == null) ? 0 : 40 + 2L * s.length();
+  }
+
+  /**
+   * The cell of the lazy load.<br>
+   * The formatting of the value, the shifting of the shared formula and the
+   * resolving of the colors are deferred until they are accessed for the first
+   * time. The cell keeps the style resolver of the sheet until then, which does
+   * not hold the shared strings.
+   */
+  static class LazyCell extends Cell {
+    private static final int PENDING_VALUE = 1;
+    private static final int PENDING_FORMULA = 2;
+    private static final int PENDING_COLORS = 4;
+    private static final int PENDING_MASK = 7;
+    private static final int STYLE_INDEX_SHIFT = 3;
+
+    private CellStyleResolver styleResolver;
+    private FormulaMaster.CellFormula sharedFormula;
+
+    // The style index in the upper bits and the pending parts in the lower bits
+    private volatile int pending;
+
+    /**
+     * Defers the resolving of the contents. The value must be set to the raw
+     * value beforehand.
+     *
+     * @param styleResolver
+     *          the resolver of the cell values and colors
+     * @param styleIndex
+     *          the style index of the cell
+     * @param valuePending
+     *          true if the value is the raw value to be formatted
+     * @param sharedFormula
+     *          the shared formula to be shifted / null
+     */
+    void setLazyContents(CellStyleResolver styleResolver, int styleIndex, boolean valuePending, FormulaMaster.CellFormula sharedFormula) {
+      this.styleResolver = styleResolver;
+      this.sharedFormula = sharedFormula;
+      int parts = PENDING_COLORS;
+      if (valuePending) {
+        parts |= PENDING_VALUE;
+      }
+      if (sharedFormula != null) {
+        parts |= PENDING_FORMULA;
+      }
+      pending = (styleIndex << STYLE_INDEX_SHIFT) | parts;
+    }
+
+    @Override
+    public String getValue() {
+      if ((pending & PENDING_VALUE) != 0) {
+        resolve(PENDING_VALUE);
+      }
+      return super.getValue();
+    }
+
+    @Override
+    public void setValue(String value) {
+      super.setValue(value);
+      if ((pending & PENDING_VALUE) != 0) {
+        cancel(PENDING_VALUE);
+      }
+    }
+
+    @Override
+    public String getFormula() {
+      if ((pending & PENDING_FORMULA) != 0) {
+        resolve(PENDING_FORMULA);
+      }
+      return super.getFormula();
+    }
+
+    @Override
+    public void setFormula(String formula) {
+      super.setFormula(formula);
+      if ((pending & PENDING_FORMULA) != 0) {
+        cancel(PENDING_FORMULA);
+      }
+    }
+
+    @Override
+    public boolean hasFormula() {
+      return super.hasFormula() || ((pending & PENDING_FORMULA) != 0);
+    }
+
+    @Override
+    public String getFontColorRGBHex() {
+      if ((pending & PENDING_COLORS) != 0) {
+        resolve(PENDING_COLORS);
+      }
+      return super.getFontColorRGBHex();
+    }
+
+    @Override
+    public void setFontColorRGBHex(String fontColorRGBHex) {
+      if ((pending & PENDING_COLORS) != 0) {
+        // The other color is kept.
+        resolve(PENDING_COLORS);
+      }
+      super.setFontColorRGBHex(fontColorRGBHex);
+    }
+
+    @Override
+    public String getBackgroundColorRGBHex() {
+      if ((pending & PENDING_COLORS) != 0) {
+        resolve(PENDING_COLORS);
+      }
+      return super.getBackgroundColorRGBHex();
+    }
+
+    @Override
+    public void setBackgroundColorRGBHex(String backgroundColorRGBHex) {
+      if ((pending & PENDING_COLORS) != 0) {
+        // The other color is kept.
+        resolve(PENDING_COLORS);
+      }
+      super.setBackgroundColorRGBHex(backgroundColorRGBHex);
+    }
+
+    @Override
+    Colors getColors() {
+      if ((pending & PENDING_COLORS) != 0) {
+        resolve(PENDING_COLORS);
+      }
+      return super.getColors();
+    }
+
+    @Override
+    long estimateSize() {
+      return super.estimateSize() + 8;
+    }
+
+    private synchronized void resolve(int part) {
+      int state = pending;
+      if ((state & part) == 0) {
+        return;
+      }
+      int styleIndex = state >>> STYLE_INDEX_SHIFT;
+      if (part == PENDING_VALUE) {
+        super.setValue(styleResolver.formatValue(getCellType(), super.getValue(), styleIndex));
+        if (getCellType() == CELL_TYPE_NUMERIC) {
+          storeNumber();
+        }
+      } else if (part == PENDING_FORMULA) {
+        super.setFormula(sharedFormula.getFormula());
+        sharedFormula = null;
+      } else {
+        CellStyleCache.ResolvedStyle resolved = styleResolver.getStyle(styleIndex);
+        if (resolved != null) {
+          setColors(resolved.colors);
+        }
+      }
+      finish(state & ~part);
+    }
+
+    private synchronized void cancel(int part) {
+      if (part == PENDING_FORMULA) {
+        sharedFormula = null;
+      }
+      finish(pending & ~part);
+    }
+
+    private void finish(int state) {
+      if ((state & PENDING_MASK) == 0) {
+        // No longer holds the styles of the book.
+        styleResolver = null;
+        state = 0;
+      }
+      pending = state;
+    }
+  }
+
+  /**
+   * The font color and the background color of a cell. It cannot be modified,
+   * so that the cells of the same style share one object.
+   */
+  static final class Colors {
+    final String fontColorRGBHex;
+    final String backgroundColorRGBHex;
+
+    private Colors(String fontColorRGBHex, String backgroundColorRGBHex) {
+      this.fontColorRGBHex = fontColorRGBHex;
+      this.backgroundColorRGBHex = backgroundColorRGBHex;
+    }
+
+    /**
+     * Returns the colors.
+     *
+     * @param fontColorRGBHex
+     *          the font color / null
+     * @param backgroundColorRGBHex
+     *          the background color / null
+     * @return the colors / null if neither color is set
+     */
+    static Colors of(String fontColorRGBHex, String backgroundColorRGBHex) {
+      if ((fontColorRGBHex == null) && (backgroundColorRGBHex == null)) {
+        return null;
+      }
+      return new Colors(fontColorRGBHex, backgroundColorRGBHex);
+    }
+  }
+
+  /**
+   * The copy of a cell that cannot be modified. It has no fields of its own,
+   * and shares the colors with the source cell.
+   */
+  private static class FrozenCell extends Cell {
+    FrozenCell(Cell src) {
+      super(src);
+    }
+
+    @Override
+    public void setXssFcell(XSSFCell xssFcell) {
+      throw new UnsupportedOperationException("The frozen cell cannot be modified");
+    }
+
+    @Override
+    public void setCellType(int cellType) {
+      throw new UnsupportedOperationException("The frozen cell cannot be modified");
+    }
+
+    @Override
+    public void setValue(String value) {
+      throw new UnsupportedOperationException("The frozen cell cannot be modified");
+    }
+
+    @Override
+    public void setFormula(String formula) {
+      throw new UnsupportedOperationException("The frozen cell cannot be modified");
+    }
+
+    @Override
+    public void setFontColorRGBHex(String fontColorRGBHex) {
+      throw new UnsupportedOperationException("The frozen cell cannot be modified");
+    }
+
+    @Override
+    public void setBackgroundColorRGBHex(String backgroundColorRGBHex) {
+      throw new UnsupportedOperationException("The frozen cell cannot be modified");
+    }
+  }
+
 }
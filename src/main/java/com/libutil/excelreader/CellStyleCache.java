@@ -0,0 +1,150 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Takashi Harano
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.libutil.excelreader;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.apache.poi.xssf.usermodel.XSSFColor;
+import org.apache.poi.xssf.usermodel.XSSFFont;
+
+/**
+ * The cache of the resolved cell styles by the style index.<br>
+ * A book usually has only a few dozen of styles, so that the colors are
+ * resolved once per style and the same String instance is shared by all cells
+ * of the same color. The style object is kept for the number format. The
+ * cache is scoped to a load and is not thread-safe.
+ */
+class CellStyleCache {
+
+  private static final int INITIAL_SIZE = 64;
+
+  private ResolvedStyle[] styles = new ResolvedStyle[INITIAL_SIZE];
+  private final Map<String, String> colors = new HashMap<>();
+  private int resolvedCount;
+
+  /**
+   * Returns the resolved style of the style object.
+   *
+   * @param style
+   *          the cell style
+   * @return the resolved style
+   */
+  ResolvedStyle get(XSSFCellStyle style) {
+    int index = style.getIndex();
+    ResolvedStyle resolved = lookup(index);
+    if (resolved == null) {
+      resolved = resolve(index, style);
+    }
+    return resolved;
+  }
+
+  /**
+   * Returns the resolved style at the index of the styles table.
+   *
+   * @param stylesTable
+   *          the styles table
+   * @param index
+   *          the style index
+   * @return the resolved style
+   */
+  ResolvedStyle get(StylesTable stylesTable, int index) {
+    ResolvedStyle resolved = lookup(index);
+    if (resolved == null) {
+      XSSFCellStyle style = stylesTable.getStyleAt(index);
+      resolved = resolve(index, style);
+    }
+    return resolved;
+  }
+
+  /**
+   * Returns the number of the styles resolved so far.
+   *
+   * @return the number of the styles
+   */
+  int getResolvedCount() {
+    return resolvedCount;
+  }
+
+  private ResolvedStyle lookup(int index) {
+    if ((index < 0) || (index >= styles.length)) {
+      return null;
+    }
+    return styles[index];
+  }
+
+  private ResolvedStyle resolve(int index, XSSFCellStyle style) {
+    XSSFColor bgColor = style.getFillForegroundXSSFColor();
+    String bgColorRGBHex = share(ExcelLoader.getRGBHex(bgColor));
+
+    XSSFFont font = style.getFont();
+    XSSFColor fontColor = font.getXSSFColor();
+    String fontColorRGBHex = share(ExcelLoader.getRGBHex(fontColor));
+
+    ResolvedStyle resolved = new ResolvedStyle(style, fontColorRGBHex, bgColorRGBHex);
+    resolvedCount++;
+    if (index >= 0) {
+      if (index >= styles.length) {
+        int newLength = styles.length;
+        while (newLength <= index) {
+          newLength *= 2;
+        }
+        ResolvedStyle[] newStyles = new ResolvedStyle[newLength];
+        System.arraycopy(styles, 0, newStyles, 0, styles.length);
+        styles = newStyles;
+      }
+      styles[index] = resolved;
+    }
+    return resolved;
+  }
+
+  private String share(String color) {
+    if (color == null) {
+      return null;
+    }
+    String shared = colors.get(color);
+    if (shared == null) {
+      colors.put(color, color);
+      shared = color;
+    }
+    return shared;
+  }
+
+  /**
+   * The pre-computed values of a cell style.
+   */
+  static class ResolvedStyle {
+    final XSSFCellStyle style;
+    // Shared by the cells of the style
+    final Cell.Colors colors;
+
+    ResolvedStyle(XSSFCellStyle style, String fontColorRGBHex, String backgroundColorRGBHex) {
+      this.style = style;
+      this.colors = Cell.Colors.of(fontColorRGBHex, backgroundColorRGBHex);
+    }
+  }
+
+}
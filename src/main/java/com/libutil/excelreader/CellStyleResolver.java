@@ -0,0 +1,166 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Takashi Harano
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.libutil.excelreader;
+
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+
+/**
+ * Resolves the formatted values and the colors of the cells by the style
+ * index.<br>
+ * It is used while the sheet is read, and afterwards by the cells of the lazy
+ * load when their values are accessed for the first time, so that it is
+ * thread-safe. It does not hold the shared strings, which the lazy cells do not
+ * need.
+ */
+class CellStyleResolver {
+
+  private final StylesTable stylesTable;
+  private final CellValueFormatter formatter;
+  private final boolean date1904;
+  private final boolean hasStyles;
+  private final CellStyleCache styleCache = new CellStyleCache();
+  private final LoadingEvents.CellFormatTrace formatTrace;
+
+  /**
+   * Creates the resolver.
+   *
+   * @param stylesTable
+   *          the styles table / null
+   * @param formatter
+   *          the cell value formatter
+   * @param date1904
+   *          true if the book uses 1904 date windowing
+   * @param formatTrace
+   *          the tracer of the slow cell formatting / null
+   */
+  CellStyleResolver(StylesTable stylesTable, CellValueFormatter formatter, boolean date1904, LoadingEvents.CellFormatTrace formatTrace) {
+    this.stylesTable = stylesTable;
+    this.formatter = formatter;
+    this.date1904 = date1904;
+    this.hasStyles = (stylesTable != null) && (stylesTable.getNumCellStyles() > 0);
+    this.formatTrace = formatTrace;
+  }
+
+  /**
+   * Formats the raw value of the boolean or numeric cell.
+   *
+   * @param cellType
+   *          the cell type (Cell.CELL_TYPE_*)
+   * @param raw
+   *          the raw value in the sheet part
+   * @param styleIndex
+   *          the style index of the cell
+   * @return the formatted value
+   */
+  String formatValue(int cellType, String raw, int styleIndex) {
+    return formatValue(cellType, raw, styleIndex, null);
+  }
+
+  /**
+   * Formats the raw value of the boolean or numeric cell.
+   *
+   * @param cellType
+   *          the cell type (Cell.CELL_TYPE_*)
+   * @param raw
+   *          the raw value in the sheet part
+   * @param styleIndex
+   *          the style index of the cell
+   * @param metrics
+   *          the metrics of the load / null
+   * @return the formatted value
+   */
+  String formatValue(int cellType, String raw, int styleIndex, LoadingMetrics metrics) {
+    if (cellType == Cell.CELL_TYPE_BOOLEAN) {
+      return ("1".equals(raw) || "true".equalsIgnoreCase(raw)) ? "TRUE" : "FALSE";
+    } else if (cellType != Cell.CELL_TYPE_NUMERIC) {
+      return raw;
+    }
+
+    double v;
+    try {
+      v = Double.parseDouble(raw);
+    } catch (NumberFormatException e) {
+      return raw;
+    }
+    XSSFCellStyle style = null;
+    CellStyleCache.ResolvedStyle resolved = getStyle(styleIndex, metrics);
+    if (resolved != null) {
+      style = resolved.style;
+    }
+    if ((metrics == null) && (formatTrace == null)) {
+      return formatter.formatNumericValue(v, style, date1904);
+    }
+    Object event = (formatTrace == null) ? null : formatTrace.begin();
+    long t0 = System.nanoTime();
+    String value = formatter.formatNumericValue(v, style, date1904);
+    if (metrics != null) {
+      metrics.formatTime += System.nanoTime() - t0;
+    }
+    if (event != null) {
+      formatTrace.end(event, raw, style);
+    }
+    return value;
+  }
+
+  /**
+   * Returns the resolved style at the style index.
+   *
+   * @param styleIndex
+   *          the style index of the cell
+   * @return the resolved style / null if the book has no styles
+   */
+  CellStyleCache.ResolvedStyle getStyle(int styleIndex) {
+    return getStyle(styleIndex, null);
+  }
+
+  /**
+   * Returns the resolved style at the style index.
+   *
+   * @param styleIndex
+   *          the style index of the cell
+   * @param metrics
+   *          the metrics of the load / null
+   * @return the resolved style / null if the book has no styles
+   */
+  synchronized CellStyleCache.ResolvedStyle getStyle(int styleIndex, LoadingMetrics metrics) {
+    if (!hasStyles) {
+      return null;
+    }
+    if (metrics == null) {
+      return styleCache.get(stylesTable, styleIndex);
+    }
+    int resolvedCount = styleCache.getResolvedCount();
+    long t0 = System.nanoTime();
+    CellStyleCache.ResolvedStyle resolved = styleCache.get(stylesTable, styleIndex);
+    metrics.styleTime += System.nanoTime() - t0;
+    if (styleCache.getResolvedCount() > resolvedCount) {
+      metrics.stylesResolved++;
+    } else {
+      metrics.styleCacheHits++;
+    }
+    return resolved;
+  }
+
+}
@@ -0,0 +1,313 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Takashi Harano
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.libutil.excelreader;
+
+import java.math.BigDecimal;
+import java.text.DecimalFormat;
+import java.text.Format;
+import java.util.regex.Pattern;
+
+import org.apache.poi.hssf.usermodel.HSSFDataFormatter;
+import org.apache.poi.ss.format.CellFormat;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.usermodel.ExcelNumberFormat;
+import org.apache.poi.util.LocaleUtil;
+import org.apache.poi.util.StringUtil;
+import org.apache.poi.xssf.usermodel.XSSFCell;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+/**
+ * Formats the cell values into the strings as displayed in Excel.<br>
+ * The instance is scoped to a load. It reuses one DataFormatter per thread,
+ * which keeps the compiled formats, and caches the number format and whether
+ * it is a date format by the format index. It can be used from multiple
+ * threads concurrently.
+ */
+class CellValueFormatter {
+
+  private static final int INITIAL_SIZE = 256;
+
+  // The formats with the conditions that the DataFormatter formats with
+  // CellFormat for each value
+  private static final Pattern RANGE_CONDITION = Pattern.compile(".*\\[\\s*(>|>=|<|<=|=)\\s*[0-9]*\\.*[0-9].*");
+
+  // The marker of the format index that the DataFormatter has no format for
+  private static final Format NO_FORMAT = new DecimalFormat();
+
+  private final ThreadLocal<Formatter> formatters = new ThreadLocal<Formatter>() {
+    @Override
+    protected Formatter initialValue() {
+      return new Formatter();
+    }
+  };
+
+  private volatile NumberFormat[] numberFormats = new NumberFormat[INITIAL_SIZE];
+
+  /**
+   * Returns the formatted value of the cell.
+   *
+   * @param xssFcell
+   *          the cell
+   * @return the formatted value
+   */
+  String formatCellValue(XSSFCell xssFcell) {
+    Formatter formatter = formatters.get();
+    if (CellType.NUMERIC == xssFcell.getCellType()) {
+      CellStyle style = xssFcell.getCellStyle();
+      if ((style != null) && isInvalidDate(xssFcell.getNumericCellValue(), getNumberFormat(style))) {
+        return formatter.invalidDateFormatter.formatCellValue(xssFcell);
+      }
+    }
+    return formatter.dataFormatter.formatCellValue(xssFcell);
+  }
+
+  /**
+   * Returns the formatted value of the raw numeric value. The result is the
+   * same as the XSSFCell of the value and the style is formatted.<br>
+   * The dates are formatted by formatRawCellContents, which gives the same
+   * result as the cell. The other values are formatted in the same way as the
+   * DataFormatter formats a numeric cell, with the Format that it creates for
+   * the format string. formatRawCellContents is not used for them because it
+   * rounds the numbers to 15 significant digits.
+   *
+   * @param value
+   *          the numeric value
+   * @param style
+   *          the cell style / null
+   * @param date1904
+   *          true if the book uses 1904 date windowing
+   * @return the formatted value
+   */
+  String formatNumericValue(double value, CellStyle style, boolean date1904) {
+    if (style == null) {
+      return Double.toString(value);
+    }
+    NumberFormat format = getNumberFormat(style);
+    if (format.formatString == null) {
+      return Double.toString(value);
+    }
+    Formatter formatter = formatters.get();
+    if (format.dateFormat && DateUtil.isValidExcelDate(value)) {
+      return formatter.dataFormatter.formatRawCellContents(value, format.index, format.formatString, date1904);
+    }
+
+    String formatted = null;
+    if (format.conditional) {
+      formatted = applyConditionalFormat(value, format, date1904);
+    }
+    if (formatted == null) {
+      Format numberFormat = formatter.getFormat(format, value);
+      if (numberFormat == NO_FORMAT) {
+        return Double.toString(value);
+      }
+      try {
+        formatted = numberFormat.format(BigDecimal.valueOf(value));
+      } catch (NumberFormatException e) {
+        formatted = numberFormat.format(value);
+      }
+    }
+    return fixExponent(formatted);
+  }
+
+  /**
+   * Formats the value with the format of the conditions by CellFormat, as the
+   * DataFormatter does.
+   *
+   * @return the formatted value / null if the format cannot be applied
+   */
+  private static String applyConditionalFormat(double value, NumberFormat format, boolean date1904) {
+    try {
+      CellFormat cellFormat = CellFormat.getInstance(LocaleUtil.getUserLocale(), format.cellFormatString);
+      Object v = value;
+      if ((value != 0.0) && DateUtil.isADateFormat(format.index, format.cellFormatString)) {
+        v = DateUtil.getJavaDate(value, date1904);
+      }
+      return cellFormat.apply(v).text.trim();
+    } catch (Exception e) {
+      return null;
+    }
+  }
+
+  /**
+   * Adds the sign of the exponent like "1E+15" to match Excel, as the
+   * DataFormatter does for the numeric cells.
+   */
+  private static String fixExponent(String formatted) {
+    int i = formatted.indexOf('E');
+    while ((i >= 0) && (i + 1 < formatted.length())) {
+      char c = formatted.charAt(i + 1);
+      if ((c >= '0') && (c <= '9')) {
+        return formatted.substring(0, i + 1) + "+" + formatted.substring(i + 1);
+      }
+      i = formatted.indexOf('E', i + 1);
+    }
+    return formatted;
+  }
+
+  /**
+   * Returns whether the value is out of the date range while the style has a
+   * date format.<br>
+   * The DataFormatter caches the date format once it has been used for a valid
+   * date, and then applies it to the invalid date values as well. The invalid
+   * date values are formatted by another DataFormatter that has never seen a
+   * valid date, to get the same result as before.
+   */
+  private static boolean isInvalidDate(double value, NumberFormat format) {
+    return format.dateFormat && !DateUtil.isValidExcelDate(value);
+  }
+
+  private NumberFormat getNumberFormat(CellStyle style) {
+    int index = style.getDataFormat() & 0xFFFF;
+    NumberFormat[] formats = numberFormats;
+    NumberFormat format = (index < formats.length) ? formats[index] : null;
+    if (format == null) {
+      format = resolve(index, style);
+    }
+    return format;
+  }
+
+  private synchronized NumberFormat resolve(int index, CellStyle style) {
+    NumberFormat[] formats = numberFormats;
+    if (index < formats.length) {
+      if (formats[index] != null) {
+        return formats[index];
+      }
+    } else {
+      int newLength = formats.length;
+      while (newLength <= index) {
+        newLength *= 2;
+      }
+      NumberFormat[] newFormats = new NumberFormat[newLength];
+      System.arraycopy(formats, 0, newFormats, 0, formats.length);
+      formats = newFormats;
+    }
+    NumberFormat format = new NumberFormat(ExcelNumberFormat.from(style));
+    formats[index] = format;
+    numberFormats = formats;
+    return format;
+  }
+
+  /**
+   * The formatters of a thread.<br>
+   * The Format objects are not thread-safe, so the ones of the number formats
+   * are kept by each thread.
+   */
+  private static class Formatter {
+    final DataFormatter dataFormatter = new HSSFDataFormatter();
+    final DataFormatter invalidDateFormatter = new HSSFDataFormatter();
+    private Format[] formats = new Format[INITIAL_SIZE];
+
+    /**
+     * Returns the Format that the DataFormatter uses for a numeric cell of the
+     * format, which is not a valid date.
+     *
+     * @return the format / NO_FORMAT if the DataFormatter has no format for it
+     */
+    Format getFormat(NumberFormat format, double value) {
+      int index = format.index & 0xFFFF;
+      if (index >= formats.length) {
+        int newLength = formats.length;
+        while (newLength <= index) {
+          newLength *= 2;
+        }
+        Format[] newFormats = new Format[newLength];
+        System.arraycopy(formats, 0, newFormats, 0, formats.length);
+        formats = newFormats;
+      }
+      Format numberFormat = formats[index];
+      if (numberFormat == null) {
+        numberFormat = FormatCell.createFormat(dataFormatter, format.cellFormatString, value);
+        if (numberFormat == null) {
+          numberFormat = NO_FORMAT;
+        }
+        formats[index] = numberFormat;
+      }
+      return numberFormat;
+    }
+  }
+
+  /**
+   * The cell to get the Format for a format string from the DataFormatter.<br>
+   * DataFormatter.createFormat(Cell) is the only public way to get it, so a
+   * cell of a scratch book is used. It is called once for each format index and
+   * thread.
+   */
+  private static class FormatCell {
+    private static final XSSFWorkbook book = new XSSFWorkbook();
+    private static final XSSFCell cell = book.createSheet().createRow(0).createCell(0);
+    private static final XSSFCellStyle style = book.createCellStyle();
+
+    /**
+     * Returns the Format of the format string.
+     *
+     * @param dataFormatter
+     *          the DataFormatter of the current thread
+     * @param formatString
+     *          the format string
+     * @param value
+     *          the value that is not a valid date if the format is a date format
+     * @return the format / null if the DataFormatter has no format for it
+     */
+    static synchronized Format createFormat(DataFormatter dataFormatter, String formatString, double value) {
+      style.setDataFormat(book.createDataFormat().getFormat(formatString));
+      cell.setCellStyle(style);
+      cell.setCellValue(value);
+      return dataFormatter.createFormat(cell);
+    }
+  }
+
+  /**
+   * The number format of a format index.
+   */
+  private static class NumberFormat {
+    final int index;
+    final String formatString;
+    final boolean dateFormat;
+
+    // The format string as the DataFormatter uses it for a numeric cell
+    final String cellFormatString;
+    final boolean conditional;
+
+    NumberFormat(ExcelNumberFormat format) {
+      this.index = format.getIdx();
+      this.formatString = StringUtil.isBlank(format.getFormat()) ? null : format.getFormat();
+      this.dateFormat = (formatString != null) && DateUtil.isADateFormat(format);
+      this.cellFormatString = (formatString == null) ? null : formatString.replace("\\%", "'%'");
+      this.conditional = (cellFormatString != null) && isConditional(cellFormatString);
+    }
+
+    private static boolean isConditional(String formatString) {
+      int p = formatString.indexOf(';');
+      if (p < 0) {
+        return false;
+      }
+      return (p != formatString.lastIndexOf(';')) || RANGE_CONDITION.matcher(formatString).matches();
+    }
+  }
+
+}
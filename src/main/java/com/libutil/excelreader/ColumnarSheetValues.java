@@ -0,0 +1,516 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Takashi Harano
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.libutil.excelreader;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * The sheet values stored by column.<br>
+ * The values are kept in primitive arrays per column instead of the Cell
+ * objects: the plain numbers in double[], the other strings as codes of a dictionary
+ * per column, and the empty values in a bit set. The accessors by the column
+ * and row position read the arrays directly, and the rows and cells are
+ * created as views when they are retrieved.<br>
+ * The cells have the value only. The formulas, colors and cell types are not
+ * kept. The values are read-only, and the methods to modify the list throw
+ * UnsupportedOperationException. The rows are not in the storage of ArrayList,
+ * so all methods that read it are overridden, including the ones of
+ * SequencedList.
+ */
+public class ColumnarSheetValues extends SheetValues implements SequencedList<SheetRow> {
+
+  private static final long serialVersionUID = 1L;
+
+  private static final int INITIAL_CAPACITY = 1024;
+
+  private transient Column[] columns = new Column[0];
+  private transient int[] rowWidths = new int[INITIAL_CAPACITY];
+  private transient int rowCount;
+  private final transient List<SheetRow> rows = new RowList();
+
+  /**
+   * Returns the number of rows.
+   *
+   * @return the number of rows
+   */
+  @Override
+  public int size() {
+    return rowCount;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return rowCount == 0;
+  }
+
+  /**
+   * Returns the row at the index as a new SheetRow.
+   *
+   * @param index
+   *          The index of row (0-)
+   * @return row data
+   */
+  @Override
+  public SheetRow get(int index) {
+    checkRow(index);
+    int width = rowWidths[index];
+    SheetRow row = new SheetRow();
+    row.ensureCapacity(width);
+    for (int j = 0; j < width; j++) {
+      row.add(newCell(j, index));
+    }
+    return row;
+  }
+
+  @Override
+  public Cell getCell(String col, int row) {
+    return getCell(ExcelStringUtil.xlscol(col), row);
+  }
+
+  @Override
+  public Cell getCell(int col, int row) {
+    if (!exists(col, row)) {
+      // Throws the same exception as SheetValues does.
+      return get(row - 1).getCell(col);
+    }
+    return newCell(col - 1, row - 1);
+  }
+
+  @Override
+  public String getValue(String col, int row) {
+    return getValue(ExcelStringUtil.xlscol(col), row);
+  }
+
+  @Override
+  public String getValue(int col, int row) {
+    if (!exists(col, row)) {
+      return get(row - 1).getCell(col).getValue();
+    }
+    return getValueAt(col - 1, row - 1);
+  }
+
+  @Override
+  public int getIntValue(String col, int row) {
+    return getIntValue(ExcelStringUtil.xlscol(col), row);
+  }
+
+  @Override
+  public int getIntValue(int col, int row) {
+    if (!exists(col, row)) {
+      return get(row - 1).getCell(col).getIntValue();
+    }
+    Column column = columns[col - 1];
+    int index = row - 1;
+    if (column.isNumber(index)) {
+      return PlainNumber.toInt(column.numbers[index], 0);
+    }
+    return ExcelStringUtil.toInteger(column.getString(index));
+  }
+
+  @Override
+  public long getLongValue(String col, int row) {
+    return getLongValue(ExcelStringUtil.xlscol(col), row);
+  }
+
+  @Override
+  public long getLongValue(int col, int row) {
+    if (!exists(col, row)) {
+      return get(row - 1).getCell(col).getLongValue();
+    }
+    Column column = columns[col - 1];
+    int index = row - 1;
+    if (column.isNumber(index)) {
+      return PlainNumber.toLong(column.numbers[index], 0L);
+    }
+    return ExcelStringUtil.toLong(column.getString(index));
+  }
+
+  @Override
+  public boolean isEmpty(String col, int row) {
+    return isEmpty(ExcelStringUtil.xlscol(col), row);
+  }
+
+  @Override
+  public boolean isEmpty(int col, int row) {
+    String value = getValue(col, row);
+    return (value == null) || value.isEmpty();
+  }
+
+  /**
+   * Appends the values of the row.
+   *
+   * @param row
+   *          the row to append
+   */
+  void addRow(SheetRow row) {
+    int index = rowCount;
+    int width = row.size();
+    if (index == rowWidths.length) {
+      rowWidths = Arrays.copyOf(rowWidths, index * 2);
+    }
+    if (width > columns.length) {
+      int n = columns.length;
+      columns = Arrays.copyOf(columns, width);
+      for (int j = n; j < width; j++) {
+        columns[j] = new Column();
+      }
+    }
+    for (int j = 0; j < width; j++) {
+      columns[j].set(index, row.get(j).getValue());
+    }
+    rowWidths[index] = width;
+    rowCount++;
+  }
+
+  /**
+   * Releases the spare capacity after all rows are appended.
+   */
+  @Override
+  public SheetRow getFirst() {
+    if (rowCount == 0) {
+      throw new NoSuchElementException();
+    }
+    return get(0);
+  }
+
+  @Override
+  public SheetRow getLast() {
+    if (rowCount == 0) {
+      throw new NoSuchElementException();
+    }
+    return get(rowCount - 1);
+  }
+
+  @Override
+  public void trimToSize() {
+    rowWidths = Arrays.copyOf(rowWidths, rowCount);
+    for (int j = 0; j < columns.length; j++) {
+      columns[j].trimToSize(rowCount);
+    }
+  }
+
+  @Override
+  public Iterator<SheetRow> iterator() {
+    return rows.iterator();
+  }
+
+  @Override
+  public ListIterator<SheetRow> listIterator() {
+    return rows.listIterator();
+  }
+
+  @Override
+  public ListIterator<SheetRow> listIterator(int index) {
+    return rows.listIterator(index);
+  }
+
+  @Override
+  public Spliterator<SheetRow> spliterator() {
+    return rows.spliterator();
+  }
+
+  @Override
+  public void forEach(Consumer<? super SheetRow> action) {
+    rows.forEach(action);
+  }
+
+  @Override
+  public List<SheetRow> subList(int fromIndex, int toIndex) {
+    return rows.subList(fromIndex, toIndex);
+  }
+
+  @Override
+  public Object[] toArray() {
+    return rows.toArray();
+  }
+
+  @Override
+  public <T> T[] toArray(T[] a) {
+    return rows.toArray(a);
+  }
+
+  @Override
+  public boolean contains(Object o) {
+    return rows.contains(o);
+  }
+
+  @Override
+  public int indexOf(Object o) {
+    return rows.indexOf(o);
+  }
+
+  @Override
+  public int lastIndexOf(Object o) {
+    return rows.lastIndexOf(o);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return rows.equals(o);
+  }
+
+  @Override
+  public int hashCode() {
+    return rows.hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return rows.toString();
+  }
+
+  @Override
+  public boolean add(SheetRow e) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void add(int index, SheetRow element) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void addFirst(SheetRow e) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void addLast(SheetRow e) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public boolean addAll(Collection<? extends SheetRow> c) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public boolean addAll(int index, Collection<? extends SheetRow> c) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public SheetRow set(int index, SheetRow element) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public SheetRow remove(int index) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public SheetRow removeFirst() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public SheetRow removeLast() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public boolean remove(Object o) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public boolean removeAll(Collection<?> c) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public boolean retainAll(Collection<?> c) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public boolean removeIf(Predicate<? super SheetRow> filter) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void replaceAll(UnaryOperator<SheetRow> operator) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void sort(Comparator<? super SheetRow> c) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void clear() {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Serialized as a plain SheetValues with the rows.
+   */
+  private Object writeReplace() {
+    SheetValues values = new SheetValues();
+    values.ensureCapacity(rowCount);
+    for (int i = 0; i < rowCount; i++) {
+      values.add(get(i));
+    }
+    return values;
+  }
+
+  private boolean exists(int col, int row) {
+    int index = row - 1;
+    return (index >= 0) && (index < rowCount) && (col >= 1) && (col <= rowWidths[index]);
+  }
+
+  private void checkRow(int index) {
+    if ((index < 0) || (index >= rowCount)) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + rowCount);
+    }
+  }
+
+  private String getValueAt(int colIndex, int rowIndex) {
+    Column column = columns[colIndex];
+    if (column.isNumber(rowIndex)) {
+      return PlainNumber.toText(column.numbers[rowIndex]);
+    }
+    return column.getString(rowIndex);
+  }
+
+  private Cell newCell(int colIndex, int rowIndex) {
+    Cell cell = new Cell();
+    cell.setValue(getValueAt(colIndex, rowIndex));
+    return cell;
+  }
+
+  /**
+   * The rows as a list view.
+   */
+  private class RowList extends AbstractList<SheetRow> {
+    @Override
+    public SheetRow get(int index) {
+      return ColumnarSheetValues.this.get(index);
+    }
+
+    @Override
+    public int size() {
+      return rowCount;
+    }
+  }
+
+  /**
+   * The values of a column.
+   */
+  private static class Column {
+    // The kind of value of each row: the row is empty if it is in blanks, a
+    // string if codes[i] > 0, otherwise a number.
+    private final BitSet blanks = new BitSet();
+    private double[] numbers;
+    private int[] codes;
+    private String[] dictionary = new String[0];
+    private Map<String, Integer> dictionaryIndex;
+
+    boolean isNumber(int index) {
+      return !blanks.get(index) && ((codes == null) || (index >= codes.length) || (codes[index] == 0));
+    }
+
+    String getString(int index) {
+      if (blanks.get(index)) {
+        return "";
+      }
+      return dictionary[codes[index] - 1];
+    }
+
+    void set(int index, String value) {
+      if ("".equals(value)) {
+        blanks.set(index);
+        return;
+      }
+      double v = PlainNumber.parse(value);
+      if (!Double.isNaN(v)) {
+        numbers = ensureCapacity(numbers, index);
+        numbers[index] = v;
+        return;
+      }
+      if (codes == null) {
+        codes = new int[Math.max(INITIAL_CAPACITY, index + 1)];
+      } else if (index >= codes.length) {
+        codes = Arrays.copyOf(codes, Math.max(codes.length * 2, index + 1));
+      }
+      codes[index] = encode(value);
+    }
+
+    private int encode(String value) {
+      if (dictionaryIndex == null) {
+        dictionaryIndex = new HashMap<>();
+      }
+      Integer code = dictionaryIndex.get(value);
+      if (code == null) {
+        int n = dictionaryIndex.size();
+        if (n == dictionary.length) {
+          dictionary = Arrays.copyOf(dictionary, Math.max(16, n * 2));
+        }
+        dictionary[n] = value;
+        code = n + 1;
+        dictionaryIndex.put(value, code);
+      }
+      return code;
+    }
+
+    private static double[] ensureCapacity(double[] a, int index) {
+      if (a == null) {
+        return new double[Math.max(INITIAL_CAPACITY, index + 1)];
+      } else if (index >= a.length) {
+        return Arrays.copyOf(a, Math.max(a.length * 2, index + 1));
+      }
+      return a;
+    }
+
+    void trimToSize(int size) {
+      if ((numbers != null) && (numbers.length > size)) {
+        numbers = Arrays.copyOf(numbers, size);
+      }
+      if ((codes != null) && (codes.length > size)) {
+        codes = Arrays.copyOf(codes, size);
+      }
+      if (dictionaryIndex != null) {
+        dictionary = Arrays.copyOf(dictionary, dictionaryIndex.size());
+        dictionaryIndex = null;
+      }
+    }
+  }
+
+}
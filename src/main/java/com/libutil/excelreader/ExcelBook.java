@@ -0,0 +1,273 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Takashi Harano
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.libutil.excelreader;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The Excel file opened once for the streaming read.<br>
+ * The ZIP directory of the file, xl/workbook.xml, the shared strings and the
+ * styles are read when the book is opened, and the sheet names and the sheets
+ * are read from the same handle afterwards, without opening the file again.
+ * The sheets can be loaded concurrently from multiple threads. The XSSFCell of
+ * the Cell objects will be null.
+ *
+ * <pre>
+ * try (ExcelBook book = ExcelLoader.openExcelBook("Book1.xlsx")) {
+ *   String[] sheetNames = book.getSheetNames();
+ *   SheetValues values = book.loadSheetValues(sheetNames[0]);
+ *   ...
+ * }
+ * </pre>
+ */
+public class ExcelBook implements Closeable {
+
+  private final BookPackage book;
+
+  private ExcelBook(BookPackage book) {
+    this.book = book;
+  }
+
+  /**
+   * Opens the Excel file.
+   *
+   * @param file
+   *          The Excel file
+   * @return the opened book
+   * @throws IOException
+   *           If an I/O error occurs
+   */
+  static ExcelBook open(File file) throws IOException {
+    return new ExcelBook(BookPackage.open(file));
+  }
+
+  /**
+   * Returns the file of the book.
+   *
+   * @return the file
+   */
+  public File getFile() {
+    return book.getFile();
+  }
+
+  /**
+   * Returns the sheet names of the book.
+   *
+   * @return an array of the sheet names in the order of the book
+   */
+  public String[] getSheetNames() {
+    List<String> names = book.getSheetNames();
+    return names.toArray(new String[names.size()]);
+  }
+
+  /**
+   * Returns the metadata of the sheet.<br>
+   * Only the start of the sheet part up to the cells is read.
+   *
+   * @param sheetName
+   *          The sheet name
+   * @return the sheet info
+   * @throws IOException
+   *           If an I/O error occurs
+   */
+  public SheetInfo getSheetInfo(String sheetName) throws IOException {
+    return book.getSheetInfo(sheetName);
+  }
+
+  /**
+   * Reads an Excel sheet and returns it as a two-dimensional array.
+   *
+   * @param sheetName
+   *          The sheet name
+   * @return Two-dimensional array of read contents
+   * @throws IOException
+   *           If an I/O error occurs
+   */
+  public SheetValues loadSheetValues(String sheetName) throws IOException {
+    return loadSheetValues(sheetName, 0, 0);
+  }
+
+  /**
+   * Reads an Excel sheet and returns it as a two-dimensional array.
+   *
+   * @param sheetName
+   *          The sheet name
+   * @param lastRowNum
+   *          Last line to load (1-1048576) / 0 for auto detection.
+   * @param lastCol
+   *          Last column to load (A-XFD) / null for auto detection.
+   * @return Two-dimensional array of read contents
+   * @throws IOException
+   *           If an I/O error occurs
+   */
+  public SheetValues loadSheetValues(String sheetName, int lastRowNum, String lastCol) throws IOException {
+    int lastCellNum = 0;
+    if (lastCol != null) {
+      lastCellNum = ExcelStringUtil.xlscol(lastCol);
+    }
+    return loadSheetValues(sheetName, lastRowNum, lastCellNum);
+  }
+
+  /**
+   * Reads an Excel sheet and returns it as a two-dimensional array.
+   *
+   * @param sheetName
+   *          The sheet name
+   * @param lastRowNum
+   *          Last line to load (1-1048576) / 0 for auto detection
+   * @param lastCellNum
+   *          Last column to load (1-16384) / 0 for auto detection
+   * @return Two-dimensional array of read contents
+   * @throws IOException
+   *           If an I/O error occurs
+   */
+  public SheetValues loadSheetValues(String sheetName, int lastRowNum, int lastCellNum) throws IOException {
+    return StreamingSheetLoader.loadSheetValues(book, sheetName, lastRowNum, lastCellNum, null, false, null);
+  }
+
+  /**
+   * Reads an Excel sheet and returns it as a two-dimensional array.<br>
+   * See ExcelLoader.loadSheetValues(String, String, int, int, boolean) for the
+   * lazy mode and ExcelLoader.loadSheetValues(String, String, int, int,
+   * LoadingListener) for the listener.
+   *
+   * @param sheetName
+   *          The sheet name
+   * @param lastRowNum
+   *          Last line to load (1-1048576) / 0 for auto detection
+   * @param lastCellNum
+   *          Last column to load (1-16384) / 0 for auto detection
+   * @param lazy
+   *          true to resolve the values, formulas and colors of the cells when
+   *          they are accessed
+   * @param listener
+   *          The loading listener / null
+   * @return Two-dimensional array of read contents
+   * @throws IOException
+   *           If an I/O error occurs
+   */
+  public SheetValues loadSheetValues(String sheetName, int lastRowNum, int lastCellNum, boolean lazy, LoadingListener listener) throws IOException {
+    return StreamingSheetLoader.loadSheetValues(book, sheetName, lastRowNum, lastCellNum, null, lazy, listener);
+  }
+
+  /**
+   * Reads the specified columns of an Excel sheet and returns it as a
+   * two-dimensional array.<br>
+   * The columns that are not specified are skipped without parsing. They are
+   * returned as empty cells.
+   *
+   * @param sheetName
+   *          The sheet name
+   * @param lastRowNum
+   *          Last line to load (1-1048576) / 0 for auto detection
+   * @param cols
+   *          The columns to load (A-XFD). e.g., "B", "F", "AZ"
+   * @return Two-dimensional array of read contents
+   * @throws IOException
+   *           If an I/O error occurs
+   */
+  public SheetValues loadSheetColumns(String sheetName, int lastRowNum, String... cols) throws IOException {
+    boolean[] columns = ExcelLoader.toColumnMask(cols);
+    return StreamingSheetLoader.loadSheetValues(book, sheetName, lastRowNum, columns.length, columns, false, null);
+  }
+
+  /**
+   * Reads an Excel sheet and returns the values stored by column.
+   *
+   * @param sheetName
+   *          The sheet name
+   * @param lastRowNum
+   *          Last line to load (1-1048576) / 0 for auto detection
+   * @param lastCellNum
+   *          Last column to load (1-16384) / 0 for auto detection
+   * @return The values of the sheet
+   * @throws IOException
+   *           If an I/O error occurs
+   */
+  public ColumnarSheetValues loadColumnarSheetValues(String sheetName, int lastRowNum, int lastCellNum) throws IOException {
+    return StreamingSheetLoader.loadColumnarSheetValues(book, sheetName, lastRowNum, lastCellNum);
+  }
+
+  /**
+   * Reads an Excel sheet and passes the rows to the handler one by one as they
+   * are read.
+   *
+   * @param sheetName
+   *          The sheet name
+   * @param lastRowNum
+   *          Last line to load (1-1048576) / 0 for auto detection
+   * @param lastCellNum
+   *          Last column to load (1-16384) / 0 for auto detection
+   * @param rowHandler
+   *          The handler to receive the rows
+   * @throws IOException
+   *           If an I/O error occurs
+   */
+  public void readSheetRows(String sheetName, int lastRowNum, int lastCellNum, RowHandler rowHandler) throws IOException {
+    book.readSheet(sheetName, lastRowNum, lastCellNum, null, false, rowHandler, null);
+  }
+
+  /**
+   * Reads all sheets of the book in parallel on the common ForkJoinPool.
+   *
+   * @return The map of the sheet name and the values in the order of the book
+   * @throws IOException
+   *           If an I/O error occurs
+   */
+  public Map<String, SheetValues> loadAllSheets() throws IOException {
+    return loadAllSheets(ForkJoinPool.commonPool(), null);
+  }
+
+  /**
+   * Reads all sheets of the book in parallel on the executor.
+   *
+   * @param executor
+   *          The executor to run the sheet loading tasks
+   * @param listener
+   *          The loading listener / null
+   * @return The map of the sheet name and the values in the order of the book
+   * @throws IOException
+   *           If an I/O error occurs
+   */
+  public Map<String, SheetValues> loadAllSheets(Executor executor, LoadingListener listener) throws IOException {
+    return StreamingSheetLoader.loadAllSheets(book, executor, listener);
+  }
+
+  /**
+   * Closes the file.<br>
+   * The sheets being loaded must be finished before closing. The values already
+   * loaded can be used after closing.
+   */
+  @Override
+  public void close() {
+    book.close();
+  }
+
+}
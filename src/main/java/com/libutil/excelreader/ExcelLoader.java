@@ -27,19 +27,29 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
 import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-
-import org.apache.poi.hssf.usermodel.HSSFDataFormatter;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.openxml4j.util.ZipFileZipEntrySource;
 import org.apache.poi.ss.usermodel.CellType;
 import org.apache.poi.xssf.usermodel.XSSFCell;
 import org.apache.poi.xssf.usermodel.XSSFCellStyle;
 import org.apache.poi.xssf.usermodel.XSSFColor;
-import org.apache.poi.xssf.usermodel.XSSFFont;
 import org.apache.poi.xssf.usermodel.XSSFRow;
 import org.apache.poi.xssf.usermodel.XSSFSheet;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
@@ -54,6 +64,12 @@ import org.xml.sax.helpers.XMLReaderFactory;
  */
 public class ExcelLoader {
 
+  // The file paths of the books opened by openBook for the JFR events. Only
+  // kept and looked up while the sheet events are enabled in a recording, so
+  // that the loading does not go through the synchronized map otherwise. The
+  // sheets of a book opened with no recording are reported without the path.
+  private static final Map<XSSFWorkbook, String> bookPaths = Collections.synchronizedMap(new WeakHashMap<XSSFWorkbook, String>());
+
   /**
    * Opens an Excel file and returns it as a Workbook object.
    *
@@ -68,6 +84,7 @@ public class ExcelLoader {
     if (!file.exists()) {
       throw new RuntimeException("Excel file not found: file=" + filePath);
     }
+    Object event = LoadingEvents.beginWorkbookOpen(filePath, false);
     XSSFWorkbook workbook = null;
     FileInputStream fis = new FileInputStream(filePath);
     try {
@@ -75,9 +92,149 @@ public class ExcelLoader {
     } finally {
       fis.close();
     }
+    if (event != null) {
+      LoadingEvents.endWorkbookOpen(event, workbook.getNumberOfSheets());
+    }
+    if (LoadingEvents.isSheetEventEnabled()) {
+      bookPaths.put(workbook, filePath);
+    }
+    return workbook;
+  }
+
+  /**
+   * Opens an Excel file in the read-only mode and returns it as a Workbook
+   * object.<br>
+   * The parts of the package are read from the file on demand with random
+   * access, instead of being buffered in memory as openBook() does. The file is
+   * kept open until the workbook is closed, and the workbook cannot be written.
+   * Closing it discards the changes made to the workbook.
+   *
+   * @param filePath
+   *          The Excel file path
+   * @return The Workbook object
+   * @throws IOException
+   *           If an I/O error occurs
+   */
+  public static XSSFWorkbook openBookReadOnly(String filePath) throws IOException {
+    File file = new File(filePath);
+    if (!file.exists()) {
+      throw new RuntimeException("Excel file not found: file=" + filePath);
+    }
+    OPCPackage pkg;
+    try {
+      pkg = OPCPackage.open(file, PackageAccess.READ);
+    } catch (Exception e) {
+      throw new IOException("Failed to open the Excel file: file=" + filePath, e);
+    }
+    return openBook(pkg, filePath);
+  }
+
+  /**
+   * Opens an Excel file in the read-only mode and returns it as a Workbook
+   * object.<br>
+   * A file of the default file system is opened in the same way as
+   * openBookReadOnly(String). A file of the other file systems, such as a zip
+   * file system, is read through its seekable channel.
+   *
+   * @param path
+   *          The Excel file path
+   * @return The Workbook object
+   * @throws IOException
+   *           If an I/O error occurs
+   */
+  public static XSSFWorkbook openBookReadOnly(Path path) throws IOException {
+    if (path.getFileSystem() == FileSystems.getDefault()) {
+      return openBookReadOnly(path.toString());
+    }
+    if (!Files.exists(path)) {
+      throw new RuntimeException("Excel file not found: file=" + path);
+    }
+    SeekableByteChannel channel = Files.newByteChannel(path);
+    return openBook(channel, path.toString());
+  }
+
+  /**
+   * Opens an Excel file held in memory in the read-only mode and returns it as
+   * a Workbook object.<br>
+   * The parts of the package are read from the array in place. The array must
+   * not be modified until the workbook is closed.
+   *
+   * @param data
+   *          The content of the Excel file
+   * @return The Workbook object
+   * @throws IOException
+   *           If an I/O error occurs
+   */
+  public static XSSFWorkbook openBookReadOnly(byte[] data) throws IOException {
+    return openBookReadOnly(ByteBuffer.wrap(data));
+  }
+
+  /**
+   * Opens an Excel file held in a buffer in the read-only mode and returns it as
+   * a Workbook object.<br>
+   * The remaining bytes of the buffer are read in place, so that a heap, direct
+   * or mapped buffer can be given without copying. The position and the limit
+   * of the buffer are not changed, and the content must not be modified until
+   * the workbook is closed.
+   *
+   * @param buffer
+   *          The content of the Excel file
+   * @return The Workbook object
+   * @throws IOException
+   *           If an I/O error occurs
+   */
+  public static XSSFWorkbook openBookReadOnly(ByteBuffer buffer) throws IOException {
+    return openBook(new ByteBufferChannel(buffer), null);
+  }
+
+  private static XSSFWorkbook openBook(SeekableByteChannel channel, String filePath) throws IOException {
+    OPCPackage pkg;
+    try {
+      ZipFile zipFile = new ZipFile(channel);
+      pkg = OPCPackage.open(new ZipFileZipEntrySource(zipFile));
+    } catch (Exception e) {
+      channel.close();
+      throw new IOException("Failed to open the Excel file: file=" + filePath, e);
+    }
+    return openBook(pkg, filePath);
+  }
+
+  private static XSSFWorkbook openBook(OPCPackage pkg, String filePath) throws IOException {
+    Object event = LoadingEvents.beginWorkbookOpen(filePath, false);
+    XSSFWorkbook workbook;
+    try {
+      workbook = new XSSFWorkbook(pkg);
+    } catch (IOException | RuntimeException e) {
+      pkg.revert();
+      throw e;
+    }
+    if (event != null) {
+      LoadingEvents.endWorkbookOpen(event, workbook.getNumberOfSheets());
+    }
+    if ((filePath != null) && LoadingEvents.isSheetEventEnabled()) {
+      bookPaths.put(workbook, filePath);
+    }
     return workbook;
   }
 
+  /**
+   * Opens an Excel file for the streaming read and returns it as an ExcelBook
+   * object.<br>
+   * The sheet names and the sheets are read from the opened file, so that the
+   * file is opened and the book structure is parsed only once for all of them.
+   * The book must be closed after use.
+   *
+   * @param filePath
+   *          The Excel file path
+   * @return The ExcelBook object
+   * @throws IOException
+   *           If an I/O error occurs
+   */
+  public static ExcelBook openExcelBook(String filePath) throws IOException {
+    File file = new File(filePath);
+    return ExcelBook.open(file);
+  }
+
   /**
    * Reads the Excel master management item definition sheet and returns it as a
    * two-dimensional array.
@@ -127,32 +284,59 @@ public class ExcelLoader {
    * @return Two-dimensional array of read contents
    */
   public static SheetValues loadSheetValues(XSSFWorkbook workbook, String sheetName, int lastRowNum, int lastCellNum) {
+    return loadSheetValues(workbook, sheetName, lastRowNum, lastCellNum, null);
+  }
+
+  /**
+   * Reads the specified columns of an Excel sheet and returns it as a
+   * two-dimensional array.<br>
+   * The columns that are not specified are skipped without parsing. They are
+   * returned as empty cells, so that the cells can be retrieved by the column
+   * position as usual.
+   *
+   * @param workbook
+   *          The Excel workbook object
+   * @param sheetName
+   *          The sheet name
+   * @param lastRowNum
+   *          Last line to load (1-1048576) / 0 for auto detection
+   * @param cols
+   *          The columns to load (A-XFD). e.g., "B", "F", "AZ"
+   * @return Two-dimensional array of read contents
+   */
+  public static SheetValues loadSheetColumns(XSSFWorkbook workbook, String sheetName, int lastRowNum, String... cols) {
+    boolean[] columns = toColumnMask(cols);
+    return loadSheetValues(workbook, sheetName, lastRowNum, columns.length, columns);
+  }
+
+  private static SheetValues loadSheetValues(XSSFWorkbook workbook, String sheetName, int lastRowNum, int lastCellNum, boolean[] columns) {
     XSSFSheet sheet = workbook.getSheet(sheetName);
     if (sheet == null) {
       throw new RuntimeException("Sheet not found: " + sheetName);
     }
+    String filePath = LoadingEvents.isSheetEventEnabled() ? bookPaths.get(workbook) : null;
+    Object event = LoadingEvents.beginSheetLoad(filePath, sheetName);
+    LoadingEvents.CellFormatTrace formatTrace = LoadingEvents.getCellFormatTrace(filePath, sheetName);
 
     int lastRowIndex = lastRowNum;
     if (lastRowIndex == 0) {
       lastRowIndex = sheet.getLastRowNum();
     }
     SheetValues rows = new SheetValues();
+    rows.ensureCapacity(Math.min(lastRowIndex, sheet.getLastRowNum()) + 1);
     int emptyRows = 0;
+    long cellCount = 0;
     Cell cell;
+    SparseSheetRow.Builder rowBuilder = new SparseSheetRow.Builder();
+    CellStyleCache styleCache = new CellStyleCache();
+    CellValueFormatter formatter = new CellValueFormatter();
     for (int i = 0; i <= lastRowIndex; i++) {
-      SheetRow row = new SheetRow();
       XSSFRow xssRow = sheet.getRow(i);
 
       int lastCellIndex = lastCellNum;
 
       if (xssRow == null) {
-        if (lastCellNum > 0) {
-          for (int j = 0; j < lastCellIndex; j++) {
-            cell = parseCell(null);
-            row.add(cell);
-          }
-        }
-        rows.add(row);
+        rows.add(rowBuilder.build(lastCellIndex));
         emptyRows++;
         continue;
       }
@@ -163,14 +347,21 @@ public class ExcelLoader {
 
       int valExists = 0;
       for (int j = 0; j < lastCellIndex; j++) {
+        if ((columns != null) && !columns[j]) {
+          continue;
+        }
         XSSFCell xssFcell = xssRow.getCell(j);
-        cell = parseCell(xssFcell);
-        row.add(cell);
-        if ((xssFcell != null) && (!"".equals(cell.getValue()))) {
+        if (xssFcell == null) {
+          continue;
+        }
+        cell = parseCell(xssFcell, styleCache, formatter, formatTrace);
+        rowBuilder.add(j, cell);
+        cellCount++;
+        if (!"".equals(cell.getValue())) {
           valExists++;
         }
       }
-      rows.add(row);
+      rows.add(rowBuilder.build(lastCellIndex));
 
       // If there is no value in Row, it will be counted as a useless row.
       if (valExists == 0) {
@@ -186,45 +377,540 @@ public class ExcelLoader {
       rows.remove(removeIndex);
     }
 
+    if (event != null) {
+      LoadingEvents.endSheetLoad(event, rows.size(), cellCount);
+    }
     return rows;
   }
 
-  private static Cell parseCell(XSSFCell xssFcell) {
-    Cell cell = new Cell();
+  /**
+   * Reads an Excel sheet directly from the file and returns it as a
+   * two-dimensional array.<br>
+   * The sheet is read with the streaming parser, so that the XSSFWorkbook object
+   * is not built. The XSSFCell of the Cell objects will be null.
+   *
+   * @param filePath
+   *          The Excel file path
+   * @param sheetName
+   *          The sheet name
+   * @return Two-dimensional array of read contents
+   * @throws IOException
+   *           If an I/O error occurs
+   */
+  public static SheetValues loadSheetValues(String filePath, String sheetName) throws IOException {
+    return loadSheetValues(filePath, sheetName, 0, 0);
+  }
+
+  /**
+   * Reads an Excel sheet directly from the file and returns it as a
+   * two-dimensional array.<br>
+   * The sheet is read with the streaming parser, so that the XSSFWorkbook object
+   * is not built. The XSSFCell of the Cell objects will be null.
+   *
+   * @param filePath
+   *          The Excel file path
+   * @param sheetName
+   *          The sheet name
+   * @param lastRowNum
+   *          Last line to load (1-1048576) / 0 for auto detection.
+   * @param lastCol
+   *          Last column to load (A-XFD) / null for auto detection.
+   * @return Two-dimensional array of read contents
+   * @throws IOException
+   *           If an I/O error occurs
+   */
+  public static SheetValues loadSheetValues(String filePath, String sheetName, int lastRowNum, String lastCol) throws IOException {
+    int lastCellNum = 0;
+    if (lastCol != null) {
+      lastCellNum = ExcelStringUtil.xlscol(lastCol);
+    }
+    return loadSheetValues(filePath, sheetName, lastRowNum, lastCellNum);
+  }
+
+  /**
+   * Reads an Excel sheet directly from the file and returns it as a
+   * two-dimensional array.<br>
+   * The sheet is read with the streaming parser, so that the XSSFWorkbook object
+   * is not built. The XSSFCell of the Cell objects will be null.
+   *
+   * @param filePath
+   *          The Excel file path
+   * @param sheetName
+   *          The sheet name
+   * @param lastRowNum
+   *          Last line to load (1-1048576) / 0 for auto detection
+   * @param lastCellNum
+   *          Last column to load (1-16384) / 0 for auto detection
+   * @return Two-dimensional array of read contents
+   * @throws IOException
+   *           If an I/O error occurs
+   */
+  public static SheetValues loadSheetValues(String filePath, String sheetName, int lastRowNum, int lastCellNum) throws IOException {
+    File file = new File(filePath);
+    return StreamingSheetLoader.loadSheetValues(file, sheetName, lastRowNum, lastCellNum, null, false);
+  }
+
+  /**
+   * Reads an Excel sheet directly from the file and returns it as a
+   * two-dimensional array.<br>
+   * In the lazy mode, the cells keep the raw value, the type and the style
+   * index, and the formatted value, the formula and the colors are resolved
+   * when they are accessed for the first time. It makes the loading faster
+   * when only some of the cells are used. The loaded values keep the shared
+   * strings and the styles of the book until all of their cells are resolved.
+   * A numeric cell with a format that shows nothing is not considered empty
+   * when trimming the empty rows at the end.
+   *
+   * @param filePath
+   *          The Excel file path
+   * @param sheetName
+   *          The sheet name
+   * @param lastRowNum
+   *          Last line to load (1-1048576) / 0 for auto detection
+   * @param lastCellNum
+   *          Last column to load (1-16384) / 0 for auto detection
+   * @param lazy
+   *          true to resolve the values, formulas and colors of the cells when
+   *          they are accessed
+   * @return Two-dimensional array of read contents
+   * @throws IOException
+   *           If an I/O error occurs
+   */
+  public static SheetValues loadSheetValues(String filePath, String sheetName, int lastRowNum, int lastCellNum, boolean lazy) throws IOException {
+    File file = new File(filePath);
+    return StreamingSheetLoader.loadSheetValues(file, sheetName, lastRowNum, lastCellNum, null, lazy);
+  }
 
+  /**
+   * Reads an Excel sheet with the streaming parser and returns it as a
+   * two-dimensional array.<br>
+   * The listener is called with the sheet name when the sheet starts and
+   * completes loading. If it is a LoadingMetricsListener, it also receives the
+   * phase timings and the counters of the load, and a LoadingProgressListener
+   * receives the number of the rows loaded so far.
+   *
+   * @param filePath
+   *          The Excel file path
+   * @param sheetName
+   *          The sheet name
+   * @param lastRowNum
+   *          Last line to load (1-1048576) / 0 for auto detection
+   * @param lastCellNum
+   *          Last column to load (1-16384) / 0 for auto detection
+   * @param listener
+   *          The loading listener / null
+   * @return Two-dimensional array of read contents
+   * @throws IOException
+   *           If an I/O error occurs
+   */
+  public static SheetValues loadSheetValues(String filePath, String sheetName, int lastRowNum, int lastCellNum, LoadingListener listener) throws IOException {
+    File file = new File(filePath);
+    return StreamingSheetLoader.loadSheetValues(file, sheetName, lastRowNum, lastCellNum, null, false, listener);
+  }
+
+  /**
+   * Reads an Excel sheet asynchronously with the streaming parser.<br>
+   * The sheet is read on the dedicated daemon threads of the library, not on
+   * the common ForkJoinPool, since the loading blocks on reading the file.
+   *
+   * @param filePath
+   *          The Excel file path
+   * @param sheetName
+   *          The sheet name
+   * @return The future of the two-dimensional array of read contents
+   */
+  public static CompletableFuture<SheetValues> loadSheetValuesAsync(String filePath, String sheetName) {
+    return loadSheetValuesAsync(filePath, sheetName, 0, 0, StreamingSheetLoader.getDefaultAsyncExecutor(), null, 0);
+  }
+
+  /**
+   * Reads an Excel sheet asynchronously with the streaming parser.<br>
+   * Cancelling the future stops the loading at the next row and frees the
+   * thread of the executor. The time limit starts when the task is submitted:
+   * when it passes, the future is completed exceptionally with a
+   * TimeoutException even if the task has not started or is blocked in
+   * reading, and the loading stops at the next row. If the listener is a LoadingProgressListener, it receives
+   * the number of the rows loaded so far. The listener is called from the
+   * thread of the executor.
+   *
+   * @param filePath
+   *          The Excel file path
+   * @param sheetName
+   *          The sheet name
+   * @param lastRowNum
+   *          Last line to load (1-1048576) / 0 for auto detection
+   * @param lastCellNum
+   *          Last column to load (1-16384) / 0 for auto detection
+   * @param executor
+   *          The executor to run the loading task
+   * @param listener
+   *          The loading listener / null
+   * @param timeoutMillis
+   *          The time limit of the loading in milliseconds / 0 for no limit
+   * @return The future of the two-dimensional array of read contents
+   */
+  public static CompletableFuture<SheetValues> loadSheetValuesAsync(String filePath, String sheetName, int lastRowNum, int lastCellNum, Executor executor, LoadingListener listener, long timeoutMillis) {
+    File file = new File(filePath);
+    return StreamingSheetLoader.loadSheetValuesAsync(file, sheetName, lastRowNum, lastCellNum, executor, listener, timeoutMillis);
+  }
+
+  /**
+   * Reads an Excel sheet through the snapshot cache and returns it as a
+   * two-dimensional array.<br>
+   * The sheet values are saved to a binary snapshot in the directory, and the
+   * next load reads the snapshot without unzipping and parsing the Excel file
+   * as long as the file is not changed. The snapshot is keyed by the size, the
+   * last modified time and the content hash of the file. The XSSFCell of the
+   * Cell objects will be null.
+   *
+   * @param filePath
+   *          The Excel file path
+   * @param sheetName
+   *          The sheet name
+   * @param lastRowNum
+   *          Last line to load (1-1048576) / 0 for auto detection
+   * @param lastCellNum
+   *          Last column to load (1-16384) / 0 for auto detection
+   * @param snapshotDir
+   *          The directory to save the snapshots
+   * @return Two-dimensional array of read contents
+   * @throws IOException
+   *           If an I/O error occurs
+   */
+  public static SheetValues loadSheetValuesWithSnapshot(String filePath, String sheetName, int lastRowNum, int lastCellNum, String snapshotDir) throws IOException {
+    File file = new File(filePath);
+    File dir = new File(snapshotDir);
+    return SheetSnapshot.load(file, dir, sheetName, lastRowNum, lastCellNum);
+  }
+
+  /**
+   * Returns the sheet values read directly from the memory-mapped snapshot.<br>
+   * The snapshot is written to the directory in the same way as
+   * loadSheetValuesWithSnapshot() if it does not exist or is out of date. The
+   * values are decoded from the mapped file on each access, so that they do not
+   * take the heap, and the processes on the same host share one copy of the
+   * file in the page cache.
+   *
+   * @param filePath
+   *          The Excel file path
+   * @param sheetName
+   *          The sheet name
+   * @param lastRowNum
+   *          Last line to load (1-1048576) / 0 for auto detection
+   * @param lastCellNum
+   *          Last column to load (1-16384) / 0 for auto detection
+   * @param snapshotDir
+   *          The directory to save the snapshots
+   * @return The values of the sheet
+   * @throws IOException
+   *           If an I/O error occurs
+   */
+  public static MappedSheetValues mapSheetValues(String filePath, String sheetName, int lastRowNum, int lastCellNum, String snapshotDir) throws IOException {
+    File file = new File(filePath);
+    File dir = new File(snapshotDir);
+    File snapshot = SheetSnapshot.update(file, dir, sheetName, lastRowNum, lastCellNum);
+    return new MappedSheetValues(snapshot);
+  }
+
+  /**
+   * Reads an Excel sheet directly from the file and returns the values stored
+   * by column.<br>
+   * The numbers are kept in double arrays and the other strings are
+   * dictionary-encoded per column, so that a large sheet takes much less memory
+   * than the SheetValues with the Cell objects. The values are read by the
+   * column and row position as usual, and the rows and cells are created on
+   * demand. The formulas and colors are not kept.
+   *
+   * @param filePath
+   *          The Excel file path
+   * @param sheetName
+   *          The sheet name
+   * @param lastRowNum
+   *          Last line to load (1-1048576) / 0 for auto detection
+   * @param lastCellNum
+   *          Last column to load (1-16384) / 0 for auto detection
+   * @return The values of the sheet
+   * @throws IOException
+   *           If an I/O error occurs
+   */
+  public static ColumnarSheetValues loadColumnarSheetValues(String filePath, String sheetName, int lastRowNum, int lastCellNum) throws IOException {
+    File file = new File(filePath);
+    return StreamingSheetLoader.loadColumnarSheetValues(file, sheetName, lastRowNum, lastCellNum);
+  }
+
+  /**
+   * Reads the specified columns of an Excel sheet directly from the file and
+   * returns it as a two-dimensional array.<br>
+   * The columns that are not specified are skipped without parsing. They are
+   * returned as empty cells, so that the cells can be retrieved by the column
+   * position as usual.
+   *
+   * @param filePath
+   *          The Excel file path
+   * @param sheetName
+   *          The sheet name
+   * @param lastRowNum
+   *          Last line to load (1-1048576) / 0 for auto detection
+   * @param cols
+   *          The columns to load (A-XFD). e.g., "B", "F", "AZ"
+   * @return Two-dimensional array of read contents
+   * @throws IOException
+   *           If an I/O error occurs
+   */
+  public static SheetValues loadSheetColumns(String filePath, String sheetName, int lastRowNum, String... cols) throws IOException {
+    File file = new File(filePath);
+    boolean[] columns = toColumnMask(cols);
+    return StreamingSheetLoader.loadSheetValues(file, sheetName, lastRowNum, columns.length, columns, false);
+  }
+
+  /**
+   * Reads an Excel sheet directly from the file and passes the rows to the
+   * handler one by one as they are read.<br>
+   * The rows are not kept by the loader, so that a sheet of any length can be
+   * processed with a bounded memory. The handler can stop reading by returning
+   * false.
+   *
+   * @param filePath
+   *          The Excel file path
+   * @param sheetName
+   *          The sheet name
+   * @param rowHandler
+   *          The handler to receive the rows
+   * @throws IOException
+   *           If an I/O error occurs
+   */
+  public static void readSheetRows(String filePath, String sheetName, RowHandler rowHandler) throws IOException {
+    readSheetRows(filePath, sheetName, 0, 0, rowHandler);
+  }
+
+  /**
+   * Reads an Excel sheet directly from the file and passes the rows to the
+   * handler one by one as they are read.
+   *
+   * @param filePath
+   *          The Excel file path
+   * @param sheetName
+   *          The sheet name
+   * @param lastRowNum
+   *          Last line to load (1-1048576) / 0 for auto detection.
+   * @param lastCol
+   *          Last column to load (A-XFD) / null for auto detection.
+   * @param rowHandler
+   *          The handler to receive the rows
+   * @throws IOException
+   *           If an I/O error occurs
+   */
+  public static void readSheetRows(String filePath, String sheetName, int lastRowNum, String lastCol, RowHandler rowHandler) throws IOException {
+    int lastCellNum = 0;
+    if (lastCol != null) {
+      lastCellNum = ExcelStringUtil.xlscol(lastCol);
+    }
+    readSheetRows(filePath, sheetName, lastRowNum, lastCellNum, rowHandler);
+  }
+
+  /**
+   * Reads an Excel sheet directly from the file and passes the rows to the
+   * handler one by one as they are read.
+   *
+   * @param filePath
+   *          The Excel file path
+   * @param sheetName
+   *          The sheet name
+   * @param lastRowNum
+   *          Last line to load (1-1048576) / 0 for auto detection
+   * @param lastCellNum
+   *          Last column to load (1-16384) / 0 for auto detection
+   * @param rowHandler
+   *          The handler to receive the rows
+   * @throws IOException
+   *           If an I/O error occurs
+   */
+  public static void readSheetRows(String filePath, String sheetName, int lastRowNum, int lastCellNum, RowHandler rowHandler) throws IOException {
+    File file = new File(filePath);
+    StreamingSheetLoader.readSheet(file, sheetName, lastRowNum, lastCellNum, rowHandler);
+  }
+
+  /**
+   * Reads all sheets of the book in parallel and returns them as a map of the
+   * sheet name and the two-dimensional array.<br>
+   * The sheets are read with the streaming parser on the common ForkJoinPool.
+   *
+   * @param filePath
+   *          The Excel file path
+   * @return The map of the sheet name and the values in the order of the book
+   * @throws IOException
+   *           If an I/O error occurs
+   */
+  public static Map<String, SheetValues> loadAllSheets(String filePath) throws IOException {
+    return loadAllSheets(filePath, ForkJoinPool.commonPool(), null);
+  }
+
+  /**
+   * Reads all sheets of the book in parallel and returns them as a map of the
+   * sheet name and the two-dimensional array.<br>
+   * The sheets are read with the streaming parser on the given executor, such as
+   * a ForkJoinPool or an executor of virtual threads.
+   *
+   * @param filePath
+   *          The Excel file path
+   * @param executor
+   *          The executor to run the sheet loading tasks
+   * @return The map of the sheet name and the values in the order of the book
+   * @throws IOException
+   *           If an I/O error occurs
+   */
+  public static Map<String, SheetValues> loadAllSheets(String filePath, Executor executor) throws IOException {
+    return loadAllSheets(filePath, executor, null);
+  }
+
+  /**
+   * Reads all sheets of the book in parallel and returns them as a map of the
+   * sheet name and the two-dimensional array.<br>
+   * The listener is called with the sheet name when each sheet starts and
+   * completes loading, and a LoadingMetricsListener also receives the metrics
+   * of each sheet. Note that it is called from the threads of the executor.
+   *
+   * @param filePath
+   *          The Excel file path
+   * @param executor
+   *          The executor to run the sheet loading tasks
+   * @param listener
+   *          The loading listener / null
+   * @return The map of the sheet name and the values in the order of the book
+   * @throws IOException
+   *           If an I/O error occurs
+   */
+  public static Map<String, SheetValues> loadAllSheets(String filePath, Executor executor, LoadingListener listener) throws IOException {
+    File file = new File(filePath);
+    return StreamingSheetLoader.loadAllSheets(file, executor, listener);
+  }
+
+  /**
+   * Loads all sheets of the Excel files in the directory or matching the glob
+   * pattern concurrently.<br>
+   * The books are loaded on virtual threads when the runtime has them, with the
+   * number of the processors as the parallelism and 1/4 of the max heap as the
+   * memory budget. See BatchLoader.
+   *
+   * @param pathOrGlob
+   *          The directory or the glob pattern of the Excel files
+   * @return The loader that returns the books as they finish
+   * @throws IOException
+   *           If an I/O error occurs while listing the files
+   */
+  public static BatchLoader loadBooks(String pathOrGlob) throws IOException {
+    return loadBooks(pathOrGlob, Runtime.getRuntime().availableProcessors(), Runtime.getRuntime().maxMemory() / 4);
+  }
+
+  /**
+   * Loads all sheets of the Excel files in the directory or matching the glob
+   * pattern concurrently.<br>
+   * The files directly in a directory are its .xlsx files. A glob pattern is
+   * like "data/*.xlsx" or "data/**&#47;*.xlsx".
+   *
+   * @param pathOrGlob
+   *          The directory or the glob pattern of the Excel files
+   * @param parallelism
+   *          The maximum number of the books loaded at a time
+   * @param memoryBudget
+   *          The maximum bytes of the books being loaded or waiting to be
+   *          taken, estimated by the uncompressed size of the files
+   * @return The loader that returns the books as they finish
+   * @throws IOException
+   *           If an I/O error occurs while listing the files
+   */
+  public static BatchLoader loadBooks(String pathOrGlob, int parallelism, long memoryBudget) throws IOException {
+    List<File> files = BatchLoader.listFiles(pathOrGlob);
+    return new BatchLoader(files, parallelism, memoryBudget);
+  }
+
+  /**
+   * Converts the column letters to the flags of the column index (0-).
+   *
+   * @param cols
+   *          The columns (A-XFD)
+   * @return the flags that are true for the specified columns. The length is
+   *         the last column number.
+   */
+  static boolean[] toColumnMask(String[] cols) {
+    if ((cols == null) || (cols.length == 0)) {
+      throw new IllegalArgumentException("No columns specified");
+    }
+    int[] colNums = new int[cols.length];
+    int lastCellNum = 0;
+    for (int i = 0; i < cols.length; i++) {
+      int n = ExcelStringUtil.xlscol(cols[i]);
+      if ((n < 1) || (n > 16384)) {
+        throw new IllegalArgumentException("Invalid column: " + cols[i]);
+      }
+      colNums[i] = n;
+      if (n > lastCellNum) {
+        lastCellNum = n;
+      }
+    }
+    boolean[] columns = new boolean[lastCellNum];
+    for (int i = 0; i < colNums.length; i++) {
+      columns[colNums[i] - 1] = true;
+    }
+    return columns;
+  }
+
+  private static Cell parseCell(XSSFCell xssFcell, CellStyleCache styleCache, CellValueFormatter formatter, LoadingEvents.CellFormatTrace formatTrace) {
     if (xssFcell == null) {
-      cell.setXssFcell(null);
-      cell.setValue("");
-      return cell;
+      return Cell.EMPTY;
     }
 
+    Cell cell = new Cell();
+
     cell.setXssFcell(xssFcell);
 
-    HSSFDataFormatter hdf = new HSSFDataFormatter();
-    String cellString = hdf.formatCellValue(xssFcell);
+    String cellString;
+    if (formatTrace == null) {
+      cellString = formatter.formatCellValue(xssFcell);
+    } else {
+      Object event = formatTrace.begin();
+      cellString = formatter.formatCellValue(xssFcell);
+      formatTrace.end(event, xssFcell);
+    }
     CellType cellType = xssFcell.getCellType();
+    cell.setCellType(toCellTypeNumber(cellType));
     if ((CellType.FORMULA).equals(cellType)) {
       cellString = xssFcell.getRawValue();
       String formula = xssFcell.getCellFormula();
       cell.setFormula(formula);
     }
     cell.setValue(cellString);
+    if ((CellType.NUMERIC).equals(cellType)) {
+      cell.storeNumber();
+    }
 
     XSSFCellStyle style = xssFcell.getCellStyle();
-
-    XSSFColor bgColor = style.getFillForegroundXSSFColor();
-    String bgColorRGBHex = getRGBHex(bgColor);
-    cell.setBackgroundColorRGBHex(bgColorRGBHex);
-
-    XSSFFont font = style.getFont();
-    XSSFColor fontColor = font.getXSSFColor();
-    String fontColorRGBHex = getRGBHex(fontColor);
-    cell.setFontColorRGBHex(fontColorRGBHex);
+    CellStyleCache.ResolvedStyle resolved = styleCache.get(style);
+    cell.setColors(resolved.colors);
 
     return cell;
   }
 
-  private static String getRGBHex(XSSFColor color) {
+  private static int toCellTypeNumber(CellType cellType) {
+    switch (cellType) {
+      case BLANK:
+        return Cell.CELL_TYPE_BLANK;
+      case BOOLEAN:
+        return Cell.CELL_TYPE_BOOLEAN;
+      case ERROR:
+        return Cell.CELL_TYPE_ERROR;
+      case FORMULA:
+        return Cell.CELL_TYPE_FORMULA;
+      case NUMERIC:
+        return Cell.CELL_TYPE_NUMERIC;
+      case STRING:
+        return Cell.CELL_TYPE_STRING;
+      default:
+        return Cell.CELL_TYPE_NONE;
+    }
+  }
+
+  static String getRGBHex(XSSFColor color) {
     String rgbHex = null;
     if (color != null) {
       rgbHex = color.getARGBHex();
@@ -255,7 +941,7 @@ public class ExcelLoader {
   public static String[] getSheetNames(File file) {
     Path path = file.toPath();
     String[] sheetNames;
-    try (FileSystem fs = FileSystems.newFileSystem(path, null)) {
+    try (FileSystem fs = FileSystems.newFileSystem(path, (ClassLoader) null)) {
       XmlContentHandler xmlContentHandler = new XmlContentHandler();
       Path xmlPath = fs.getPath("xl/workbook.xml");
 
@@ -276,6 +962,24 @@ public class ExcelLoader {
     return sheetNames;
   }
 
+  /**
+   * Returns the metadata of the sheets of the book.<br>
+   * Only the book structure and the start of each sheet part up to the cells
+   * are read, so that the used range and the size of a sheet can be checked
+   * before loading it.
+   *
+   * @param path
+   *          the book file path
+   * @return an array of the sheet info in the order of the book
+   * @throws IOException
+   *           If an I/O error occurs
+   */
+  public static SheetInfo[] getSheetInfo(String path) throws IOException {
+    File file = new File(path);
+    List<SheetInfo> infos = BookPackage.probeSheets(file);
+    return infos.toArray(new SheetInfo[infos.size()]);
+  }
+
   private static class XmlContentHandler extends DefaultHandler {
     private final List<String> names;
 
@@ -0,0 +1,125 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Takashi Harano
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.libutil.excelreader;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.poi.ss.util.CellRangeAddress;
+
+/**
+ * The master formula of the shared or array formula group.
+ */
+class FormulaMaster {
+  private static final Pattern CELL_REF = Pattern.compile("(?<![A-Za-z0-9_.])(\\$?)([A-Za-z]{1,3})(\\$?)([0-9]{1,7})(?![A-Za-z0-9_(])");
+
+  final String formula;
+  final CellRangeAddress range;
+
+  FormulaMaster(String formula, String ref) {
+    this.formula = formula;
+    this.range = CellRangeAddress.valueOf(ref);
+  }
+
+  /**
+   * Returns the formula shifted to the given cell position. The absolute
+   * references are left as they are.
+   *
+   * @param row
+   *          the row index (0-)
+   * @param col
+   *          the column index (0-)
+   * @return the formula
+   */
+  String getFormula(int row, int col) {
+    int rowOffset = row - range.getFirstRow();
+    int colOffset = col - range.getFirstColumn();
+    if ((rowOffset == 0) && (colOffset == 0)) {
+      return formula;
+    }
+
+    StringBuilder sb = new StringBuilder();
+    int len = formula.length();
+    int start = 0;
+    for (int i = 0; i <= len; i++) {
+      char c = (i < len) ? formula.charAt(i) : 0;
+      if ((c == '"') || (c == '\'') || (i == len)) {
+        sb.append(shift(formula.substring(start, i), rowOffset, colOffset));
+        if (i == len) {
+          break;
+        }
+        // Quoted string or sheet name
+        int end = formula.indexOf(c, i + 1);
+        end = (end < 0) ? len : end + 1;
+        sb.append(formula, i, end);
+        start = end;
+        i = end - 1;
+      }
+    }
+    return sb.toString();
+  }
+
+  private static String shift(String s, int rowOffset, int colOffset) {
+    Matcher m = CELL_REF.matcher(s);
+    StringBuffer sb = new StringBuffer();
+    while (m.find()) {
+      String col = m.group(2).toUpperCase();
+      int colNum = ExcelStringUtil.xlscol(col);
+      if (colNum > 16384) {
+        continue;
+      }
+      int rowNum = Integer.parseInt(m.group(4));
+      if (m.group(1).isEmpty()) {
+        colNum += colOffset;
+      }
+      if (m.group(3).isEmpty()) {
+        rowNum += rowOffset;
+      }
+      String ref = m.group(1) + ExcelStringUtil.xlscol(colNum) + m.group(3) + rowNum;
+      m.appendReplacement(sb, Matcher.quoteReplacement(ref));
+    }
+    m.appendTail(sb);
+    return sb.toString();
+  }
+
+  /**
+   * The shared formula of a cell that is shifted when it is accessed.
+   */
+  static class CellFormula {
+    private final FormulaMaster master;
+    private final int row;
+    private final int col;
+
+    CellFormula(FormulaMaster master, int row, int col) {
+      this.master = master;
+      this.row = row;
+      this.col = col;
+    }
+
+    String getFormula() {
+      return master.getFormula(row, col);
+    }
+  }
+
+}
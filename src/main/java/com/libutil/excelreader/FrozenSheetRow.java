@@ -0,0 +1,196 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Takashi Harano
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.libutil.excelreader;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * The frozen row that has all cells populated.<br>
+ * The cells are kept in the storage of ArrayList of the exact size, and the row
+ * has no fields of its own, so it is as small as the row of the eager load. The
+ * methods to modify the row throw UnsupportedOperationException.
+ */
+class FrozenSheetRow extends SheetRow implements SequencedList<Cell> {
+
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * Creates the row.
+   *
+   * @param cells
+   *          the cells
+   * @param count
+   *          the number of the cells
+   */
+  FrozenSheetRow(Cell[] cells, int count) {
+    super.ensureCapacity(count);
+    for (int i = 0; i < count; i++) {
+      super.add(cells[i]);
+    }
+  }
+
+  @Override
+  public Cell getFirst() {
+    if (isEmpty()) {
+      throw new NoSuchElementException();
+    }
+    return get(0);
+  }
+
+  @Override
+  public Cell getLast() {
+    if (isEmpty()) {
+      throw new NoSuchElementException();
+    }
+    return get(size() - 1);
+  }
+
+  @Override
+  public List<Cell> subList(int fromIndex, int toIndex) {
+    // The sub list of ArrayList writes to the storage directly.
+    return Collections.unmodifiableList(super.subList(fromIndex, toIndex));
+  }
+
+  @Override
+  public void trimToSize() {
+    // Already compact.
+  }
+
+  @Override
+  public void ensureCapacity(int minCapacity) {
+    // Does not grow.
+  }
+
+  @Override
+  public boolean add(Cell e) {
+    throw new UnsupportedOperationException("The frozen row cannot be modified");
+  }
+
+  @Override
+  public void add(int index, Cell element) {
+    throw new UnsupportedOperationException("The frozen row cannot be modified");
+  }
+
+  @Override
+  public void addFirst(Cell e) {
+    throw new UnsupportedOperationException("The frozen row cannot be modified");
+  }
+
+  @Override
+  public void addLast(Cell e) {
+    throw new UnsupportedOperationException("The frozen row cannot be modified");
+  }
+
+  @Override
+  public boolean addAll(Collection<? extends Cell> c) {
+    throw new UnsupportedOperationException("The frozen row cannot be modified");
+  }
+
+  @Override
+  public boolean addAll(int index, Collection<? extends Cell> c) {
+    throw new UnsupportedOperationException("The frozen row cannot be modified");
+  }
+
+  @Override
+  public Cell set(int index, Cell element) {
+    throw new UnsupportedOperationException("The frozen row cannot be modified");
+  }
+
+  @Override
+  public Cell remove(int index) {
+    throw new UnsupportedOperationException("The frozen row cannot be modified");
+  }
+
+  @Override
+  public Cell removeFirst() {
+    throw new UnsupportedOperationException("The frozen row cannot be modified");
+  }
+
+  @Override
+  public Cell removeLast() {
+    throw new UnsupportedOperationException("The frozen row cannot be modified");
+  }
+
+  @Override
+  public boolean remove(Object o) {
+    throw new UnsupportedOperationException("The frozen row cannot be modified");
+  }
+
+  @Override
+  protected void removeRange(int fromIndex, int toIndex) {
+    throw new UnsupportedOperationException("The frozen row cannot be modified");
+  }
+
+  @Override
+  public boolean removeAll(Collection<?> c) {
+    throw new UnsupportedOperationException("The frozen row cannot be modified");
+  }
+
+  @Override
+  public boolean retainAll(Collection<?> c) {
+    throw new UnsupportedOperationException("The frozen row cannot be modified");
+  }
+
+  @Override
+  public boolean removeIf(Predicate<? super Cell> filter) {
+    throw new UnsupportedOperationException("The frozen row cannot be modified");
+  }
+
+  @Override
+  public void replaceAll(UnaryOperator<Cell> operator) {
+    throw new UnsupportedOperationException("The frozen row cannot be modified");
+  }
+
+  @Override
+  public void sort(Comparator<? super Cell> c) {
+    throw new UnsupportedOperationException("The frozen row cannot be modified");
+  }
+
+  @Override
+  public void clear() {
+    throw new UnsupportedOperationException("The frozen row cannot be modified");
+  }
+
+  @Override
+  public Object clone() {
+    // Nothing to copy.
+    return this;
+  }
+
+  /**
+   * Serialized as an ordinary SheetRow.
+   */
+  private Object writeReplace() {
+    SheetRow row = new SheetRow();
+    row.addAll(this);
+    return row;
+  }
+
+}
@@ -0,0 +1,334 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Takashi Harano
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.libutil.excelreader;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * The sheet values that cannot be modified, created by SheetValues.freeze().
+ * <br>
+ * The rows keep only the populated cells in the arrays of the exact size, and
+ * the cells are copies that have all contents resolved and do not keep the
+ * XSSFCell. Reading the values does not modify or allocate anything, so they
+ * can be read from any number of threads without synchronization. The rows are
+ * held by a final field, so the values are safely published to the other
+ * threads however the reference is passed.<br>
+ * The methods to modify the values, the rows and the cells throw
+ * UnsupportedOperationException. The rows are not in the storage of ArrayList,
+ * so all methods that read it are overridden, including the ones of
+ * SequencedList.
+ */
+class FrozenSheetValues extends SheetValues implements SequencedList<SheetRow> {
+
+  private static final long serialVersionUID = 1L;
+
+  private final transient SheetRow[] rows;
+  private final transient List<SheetRow> view = new RowList();
+
+  /**
+   * Creates the frozen copy of the values.
+   *
+   * @param values
+   *          the values to copy
+   */
+  FrozenSheetValues(SheetValues values) {
+    int rowCount = values.size();
+    SheetRow[] frozenRows = new SheetRow[rowCount];
+    SparseSheetRow.Builder rowBuilder = new SparseSheetRow.Builder();
+    for (int i = 0; i < rowCount; i++) {
+      SheetRow row = values.get(i);
+      if (row == null) {
+        continue;
+      }
+      int width = row.size();
+      for (int j = 0; j < width; j++) {
+        Cell cell = row.get(j);
+        if (cell != Cell.EMPTY) {
+          rowBuilder.add(j, Cell.freeze(cell));
+        }
+      }
+      frozenRows[i] = rowBuilder.buildFrozen(width);
+    }
+    this.rows = frozenRows;
+  }
+
+  /**
+   * Returns the values themselves, as they are frozen.
+   *
+   * @return this object
+   */
+  @Override
+  public SheetValues freeze() {
+    return this;
+  }
+
+  @Override
+  public int size() {
+    return rows.length;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return rows.length == 0;
+  }
+
+  @Override
+  public SheetRow get(int index) {
+    if ((index < 0) || (index >= rows.length)) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + rows.length);
+    }
+    return rows[index];
+  }
+
+  @Override
+  public SheetRow getFirst() {
+    if (rows.length == 0) {
+      throw new NoSuchElementException();
+    }
+    return rows[0];
+  }
+
+  @Override
+  public SheetRow getLast() {
+    if (rows.length == 0) {
+      throw new NoSuchElementException();
+    }
+    return rows[rows.length - 1];
+  }
+
+  @Override
+  public void trimToSize() {
+    // Already compact.
+  }
+
+  @Override
+  public Iterator<SheetRow> iterator() {
+    return view.iterator();
+  }
+
+  @Override
+  public ListIterator<SheetRow> listIterator() {
+    return view.listIterator();
+  }
+
+  @Override
+  public ListIterator<SheetRow> listIterator(int index) {
+    return view.listIterator(index);
+  }
+
+  @Override
+  public Spliterator<SheetRow> spliterator() {
+    return view.spliterator();
+  }
+
+  @Override
+  public void forEach(Consumer<? super SheetRow> action) {
+    view.forEach(action);
+  }
+
+  @Override
+  public List<SheetRow> subList(int fromIndex, int toIndex) {
+    return view.subList(fromIndex, toIndex);
+  }
+
+  @Override
+  public Object[] toArray() {
+    return view.toArray();
+  }
+
+  @Override
+  public <T> T[] toArray(T[] a) {
+    return view.toArray(a);
+  }
+
+  @Override
+  public boolean contains(Object o) {
+    return view.contains(o);
+  }
+
+  @Override
+  public int indexOf(Object o) {
+    return view.indexOf(o);
+  }
+
+  @Override
+  public int lastIndexOf(Object o) {
+    return view.lastIndexOf(o);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return view.equals(o);
+  }
+
+  @Override
+  public int hashCode() {
+    return view.hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return view.toString();
+  }
+
+  @Override
+  public boolean add(SheetRow e) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void add(int index, SheetRow element) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public boolean addAll(Collection<? extends SheetRow> c) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public boolean addAll(int index, Collection<? extends SheetRow> c) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void addFirst(SheetRow e) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void addLast(SheetRow e) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public SheetRow set(int index, SheetRow element) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public SheetRow remove(int index) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public SheetRow removeFirst() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public SheetRow removeLast() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public boolean remove(Object o) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public boolean removeAll(Collection<?> c) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public boolean retainAll(Collection<?> c) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public boolean removeIf(Predicate<? super SheetRow> filter) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void replaceAll(UnaryOperator<SheetRow> operator) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void sort(Comparator<? super SheetRow> c) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void clear() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public Object clone() {
+    // Nothing to copy.
+    return this;
+  }
+
+  @Override
+  long estimateSize() {
+    long size = 56 + 4L * rows.length;
+    for (int i = 0; i < rows.length; i++) {
+      if (rows[i] != null) {
+        size += rows[i].estimateSize();
+      }
+    }
+    return size;
+  }
+
+  /**
+   * Serialized as a plain SheetValues with the rows.
+   */
+  private Object writeReplace() {
+    SheetValues values = new SheetValues();
+    values.ensureCapacity(rows.length);
+    for (int i = 0; i < rows.length; i++) {
+      values.add(rows[i]);
+    }
+    return values;
+  }
+
+  /**
+   * The rows as a list view.
+   */
+  private class RowList extends AbstractList<SheetRow> {
+    @Override
+    public SheetRow get(int index) {
+      return rows[index];
+    }
+
+    @Override
+    public int size() {
+      return rows.length;
+    }
+  }
+
+}
@@ -0,0 +1,222 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Takashi Harano
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.libutil.excelreader;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Loads all sheets of a book again, parsing only the sheets that have changed
+ * since the last load.<br>
+ * The changes are detected by the CRC-32 and the size of the zip entries, which
+ * are read from the zip directory without inflating the parts. A sheet is
+ * parsed again when its part (xl/worksheets/*.xml) has changed, or when any of
+ * the parts shared by the sheets, i.e. the shared strings, the styles and the
+ * theme that the workbook refers to, or the date system of the book has
+ * changed. The values of the other
+ * sheets are reused from the last load, also when the sheets are renamed or
+ * reordered. If nothing has changed, the last map is returned without opening
+ * the package.<br>
+ * An instance keeps the values of one file. It can be used as the loader of
+ * BookReloader.
+ *
+ * <pre>
+ * BookReloader.Reloadable&lt;Map&lt;String, SheetValues&gt;&gt; sheets = reloader.watch("Book1.xlsx", new IncrementalBookLoader());
+ * </pre>
+ */
+public class IncrementalBookLoader implements BookReloader.Loader<Map<String, SheetValues>> {
+
+  // The state of the last load (guarded by this)
+  private File file;
+  private Map<String, PartStamp> entryStamps;
+  private List<String> sharedEntryNames;
+  private boolean date1904;
+  private Map<String, SheetPart> sheetParts = new HashMap<>();
+  private Map<String, SheetValues> sheets;
+  private List<String> parsedSheetNames = Collections.emptyList();
+
+  /**
+   * Loads all sheets of the book, parsing only the sheets that have changed
+   * since the last load.<br>
+   * The values of the unchanged sheets are the same objects as the ones
+   * returned last time, so they must not be modified.
+   *
+   * @param filePath
+   *          The Excel file path. If it is different from the last one, all
+   *          sheets are parsed.
+   * @return The unmodifiable map of the sheet name and the values in the order
+   *         of the book
+   * @throws IOException
+   *           If an I/O error occurs
+   */
+  @Override
+  public synchronized Map<String, SheetValues> load(String filePath) throws IOException {
+    File newFile = new File(filePath).getAbsoluteFile();
+    if (!newFile.equals(file)) {
+      file = newFile;
+      entryStamps = null;
+      sheetParts = new HashMap<>();
+      sheets = null;
+    }
+    if (!file.exists()) {
+      throw new RuntimeException("Excel file not found: file=" + filePath);
+    }
+
+    Map<String, PartStamp> newEntryStamps = readEntryStamps(file);
+    if ((sheets != null) && newEntryStamps.equals(entryStamps)) {
+      parsedSheetNames = Collections.emptyList();
+      return sheets;
+    }
+
+    Map<String, SheetValues> newSheets = new LinkedHashMap<>();
+    Map<String, SheetPart> newSheetParts = new HashMap<>();
+    List<String> parsed = new ArrayList<>();
+    List<String> newSharedEntryNames;
+    try (BookPackage book = BookPackage.open(file)) {
+      newSharedEntryNames = book.getSharedEntryNames();
+      boolean sharedChanged = (entryStamps == null) || isSharedChanged(sharedEntryNames, entryStamps, newSharedEntryNames, newEntryStamps);
+      if (book.isDate1904() != date1904) {
+        sharedChanged = true;
+      }
+      for (String sheetName : book.getSheetNames()) {
+        String entryName = book.getSheetEntryName(sheetName);
+        PartStamp stamp = newEntryStamps.get(entryName);
+        SheetPart part = sheetParts.get(entryName);
+        SheetValues values;
+        if (!sharedChanged && (part != null) && (stamp != null) && stamp.equals(part.stamp)) {
+          values = part.values;
+        } else {
+          values = StreamingSheetLoader.loadSheetValues(book, sheetName, 0, 0, null, false, null);
+          parsed.add(sheetName);
+        }
+        newSheets.put(sheetName, values);
+        newSheetParts.put(entryName, new SheetPart(stamp, values));
+      }
+      date1904 = book.isDate1904();
+    }
+
+    entryStamps = newEntryStamps;
+    sharedEntryNames = newSharedEntryNames;
+    sheetParts = newSheetParts;
+    sheets = Collections.unmodifiableMap(newSheets);
+    parsedSheetNames = Collections.unmodifiableList(parsed);
+    return sheets;
+  }
+
+  /**
+   * Returns the names of the sheets that were parsed by the last load. The
+   * other sheets were reused.
+   *
+   * @return the sheet names
+   */
+  public synchronized List<String> getParsedSheetNames() {
+    return parsedSheetNames;
+  }
+
+  /**
+   * Returns whether the parts shared by the sheets have changed. The parts are
+   * the ones that the books refer to, so a part that has been renamed or
+   * replaced by another is also a change.
+   */
+  private static boolean isSharedChanged(List<String> oldNames, Map<String, PartStamp> oldStamps, List<String> newNames, Map<String, PartStamp> newStamps) {
+    if (!newNames.equals(oldNames)) {
+      return true;
+    }
+    for (String name : newNames) {
+      if (!isEqual(oldStamps.get(name), newStamps.get(name))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean isEqual(PartStamp a, PartStamp b) {
+    return (a == null) ? (b == null) : a.equals(b);
+  }
+
+  /**
+   * Reads the CRC-32 and the size of the entries from the zip directory.
+   */
+  private static Map<String, PartStamp> readEntryStamps(File file) throws IOException {
+    Map<String, PartStamp> stamps = new HashMap<>();
+    try (ZipFile zip = new ZipFile(file)) {
+      Enumeration<? extends ZipEntry> entries = zip.entries();
+      while (entries.hasMoreElements()) {
+        ZipEntry entry = entries.nextElement();
+        stamps.put(entry.getName(), new PartStamp(entry.getCrc(), entry.getSize()));
+      }
+    }
+    return stamps;
+  }
+
+  /**
+   * The CRC-32 and the uncompressed size of a zip entry.
+   */
+  private static class PartStamp {
+    final long crc;
+    final long size;
+
+    PartStamp(long crc, long size) {
+      this.crc = crc;
+      this.size = size;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof PartStamp)) {
+        return false;
+      }
+      PartStamp s = (PartStamp) o;
+      return (crc == s.crc) && (size == s.size);
+    }
+
+    @Override
+    public int hashCode() {
+      return (int) (crc ^ (crc >>> 32)) * 31 + (int) (size ^ (size >>> 32));
+    }
+  }
+
+  /**
+   * The values of a sheet part and the stamp of the part they were read from.
+   */
+  private static class SheetPart {
+    final PartStamp stamp;
+    final SheetValues values;
+
+    SheetPart(PartStamp stamp, SheetValues values) {
+      this.stamp = stamp;
+      this.values = values;
+    }
+  }
+
+}
@@ -0,0 +1,182 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Takashi Harano
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.libutil.excelreader;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.xssf.usermodel.XSSFCell;
+
+/**
+ * The JFR events of the loading.<br>
+ * This class refers to jdk.jfr, so that it must be used only through
+ * LoadingEvents, which checks that JFR is available in the runtime.
+ */
+final class JfrLoadingEvents {
+
+  private static final String CATEGORY = "Excel Reader";
+
+  private JfrLoadingEvents() {
+  }
+
+  static Object beginWorkbookOpen(String filePath, boolean streaming) {
+    WorkbookOpenEvent event = new WorkbookOpenEvent();
+    if (!event.isEnabled()) {
+      return null;
+    }
+    event.filePath = filePath;
+    event.streaming = streaming;
+    event.begin();
+    return event;
+  }
+
+  static void endWorkbookOpen(Object e, int sheetCount) {
+    WorkbookOpenEvent event = (WorkbookOpenEvent) e;
+    event.end();
+    if (event.shouldCommit()) {
+      event.sheetCount = sheetCount;
+      event.commit();
+    }
+  }
+
+  static Object beginSheetLoad(String filePath, String sheetName) {
+    SheetLoadEvent event = new SheetLoadEvent();
+    if (!event.isEnabled()) {
+      return null;
+    }
+    event.filePath = filePath;
+    event.sheetName = sheetName;
+    event.begin();
+    return event;
+  }
+
+  static void endSheetLoad(Object e, long rowCount, long cellCount) {
+    SheetLoadEvent event = (SheetLoadEvent) e;
+    event.end();
+    if (event.shouldCommit()) {
+      event.rowCount = rowCount;
+      event.cellCount = cellCount;
+      event.commit();
+    }
+  }
+
+  static boolean isSheetEventEnabled() {
+    return new SheetLoadEvent().isEnabled() || new CellFormatEvent().isEnabled();
+  }
+
+  static boolean isCellFormatEnabled() {
+    return new CellFormatEvent().isEnabled();
+  }
+
+  static Object beginCellFormat() {
+    CellFormatEvent event = new CellFormatEvent();
+    event.begin();
+    return event;
+  }
+
+  static void endCellFormat(Object e, String filePath, String sheetName, XSSFCell cell) {
+    CellFormatEvent event = (CellFormatEvent) e;
+    event.end();
+    if (event.shouldCommit()) {
+      commitCellFormat(event, filePath, sheetName, cell.getRawValue(), cell.getCellStyle());
+    }
+  }
+
+  static void endCellFormat(Object e, String filePath, String sheetName, String value, CellStyle style) {
+    CellFormatEvent event = (CellFormatEvent) e;
+    event.end();
+    if (event.shouldCommit()) {
+      commitCellFormat(event, filePath, sheetName, value, style);
+    }
+  }
+
+  private static void commitCellFormat(CellFormatEvent event, String filePath, String sheetName, String value, CellStyle style) {
+    event.filePath = filePath;
+    event.sheetName = sheetName;
+    event.value = value;
+    event.format = (style == null) ? null : style.getDataFormatString();
+    event.commit();
+  }
+
+  @Name("com.libutil.excelreader.WorkbookOpen")
+  @Label("Workbook Open")
+  @Description("Opening an Excel file")
+  @Category(CATEGORY)
+  static class WorkbookOpenEvent extends Event {
+    @Label("File Path")
+    String filePath;
+
+    @Label("Streaming")
+    @Description("Opened as a package for the streaming read, not as an XSSFWorkbook")
+    boolean streaming;
+
+    @Label("Sheet Count")
+    int sheetCount;
+  }
+
+  @Name("com.libutil.excelreader.SheetLoad")
+  @Label("Sheet Load")
+  @Description("Loading the values of a sheet")
+  @Category(CATEGORY)
+  static class SheetLoadEvent extends Event {
+    @Label("File Path")
+    String filePath;
+
+    @Label("Sheet Name")
+    String sheetName;
+
+    @Label("Row Count")
+    long rowCount;
+
+    @Label("Cell Count")
+    long cellCount;
+  }
+
+  @Name("com.libutil.excelreader.SlowCellFormat")
+  @Label("Slow Cell Format")
+  @Description("Formatting a cell value that took longer than the threshold")
+  @Category(CATEGORY)
+  @Threshold("1 ms")
+  static class CellFormatEvent extends Event {
+    @Label("File Path")
+    String filePath;
+
+    @Label("Sheet Name")
+    String sheetName;
+
+    @Label("Value")
+    @Description("The raw value of the cell")
+    String value;
+
+    @Label("Format")
+    @Description("The number format of the cell")
+    String format;
+  }
+
+}
@@ -0,0 +1,184 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Takashi Harano
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.libutil.excelreader;
+
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.xssf.usermodel.XSSFCell;
+
+/**
+ * Emits the JFR events of the loading when the runtime has JFR (JDK 11 or
+ * later, or 8u272 or later).<br>
+ * The event handles are passed as Object, so that the JFR classes are not
+ * loaded on the runtimes without it. The begin methods return null when JFR is
+ * not available or the event is not enabled in the recording, and then the
+ * end methods must not be called.
+ */
+final class LoadingEvents {
+
+  private static final boolean AVAILABLE = hasJfr();
+
+  private LoadingEvents() {
+  }
+
+  private static boolean hasJfr() {
+    try {
+      Class.forName("jdk.jfr.Event");
+      return true;
+    } catch (Throwable t) {
+      return false;
+    }
+  }
+
+  /**
+   * Returns whether the sheet load or the cell format event is enabled in a
+   * recording. These events have the file path of the sheet.
+   *
+   * @return true if the file path of the sheet is needed
+   */
+  static boolean isSheetEventEnabled() {
+    return AVAILABLE && JfrLoadingEvents.isSheetEventEnabled();
+  }
+
+  /**
+   * Begins the workbook open event.
+   *
+   * @param filePath
+   *          the file path / null if unknown
+   * @param streaming
+   *          true if the file is opened as a package for the streaming read
+   * @return the event / null
+   */
+  static Object beginWorkbookOpen(String filePath, boolean streaming) {
+    return AVAILABLE ? JfrLoadingEvents.beginWorkbookOpen(filePath, streaming) : null;
+  }
+
+  /**
+   * Ends and commits the workbook open event.
+   *
+   * @param event
+   *          the event returned by beginWorkbookOpen
+   * @param sheetCount
+   *          the number of the sheets of the book
+   */
+  static void endWorkbookOpen(Object event, int sheetCount) {
+    JfrLoadingEvents.endWorkbookOpen(event, sheetCount);
+  }
+
+  /**
+   * Begins the sheet load event.
+   *
+   * @param filePath
+   *          the file path / null if unknown
+   * @param sheetName
+   *          the sheet name
+   * @return the event / null
+   */
+  static Object beginSheetLoad(String filePath, String sheetName) {
+    return AVAILABLE ? JfrLoadingEvents.beginSheetLoad(filePath, sheetName) : null;
+  }
+
+  /**
+   * Ends and commits the sheet load event.
+   *
+   * @param event
+   *          the event returned by beginSheetLoad
+   * @param rowCount
+   *          the number of the rows
+   * @param cellCount
+   *          the number of the cells
+   */
+  static void endSheetLoad(Object event, long rowCount, long cellCount) {
+    JfrLoadingEvents.endSheetLoad(event, rowCount, cellCount);
+  }
+
+  /**
+   * Returns the tracer of the slow cell formatting of a sheet.<br>
+   * It is checked once per sheet, so that the cells are not timed unless the
+   * event is enabled when the sheet load starts.
+   *
+   * @param filePath
+   *          the file path / null if unknown
+   * @param sheetName
+   *          the sheet name
+   * @return the tracer / null if the event is not enabled
+   */
+  static CellFormatTrace getCellFormatTrace(String filePath, String sheetName) {
+    if (!AVAILABLE || !JfrLoadingEvents.isCellFormatEnabled()) {
+      return null;
+    }
+    return new CellFormatTrace(filePath, sheetName);
+  }
+
+  /**
+   * Emits the slow cell format events of a sheet.
+   */
+  static final class CellFormatTrace {
+    private final String filePath;
+    private final String sheetName;
+
+    private CellFormatTrace(String filePath, String sheetName) {
+      this.filePath = filePath;
+      this.sheetName = sheetName;
+    }
+
+    /**
+     * Begins the cell format event.
+     *
+     * @return the event
+     */
+    Object begin() {
+      return JfrLoadingEvents.beginCellFormat();
+    }
+
+    /**
+     * Ends the cell format event and commits it if it took longer than the
+     * threshold. The raw value and the number format are read only when the
+     * event is committed.
+     *
+     * @param event
+     *          the event returned by begin
+     * @param cell
+     *          the cell
+     */
+    void end(Object event, XSSFCell cell) {
+      JfrLoadingEvents.endCellFormat(event, filePath, sheetName, cell);
+    }
+
+    /**
+     * Ends the cell format event and commits it if it took longer than the
+     * threshold. The number format is read only when the event is committed.
+     *
+     * @param event
+     *          the event returned by begin
+     * @param value
+     *          the raw value of the cell
+     * @param style
+     *          the cell style / null
+     */
+    void end(Object event, String value, CellStyle style) {
+      JfrLoadingEvents.endCellFormat(event, filePath, sheetName, value, style);
+    }
+  }
+
+}
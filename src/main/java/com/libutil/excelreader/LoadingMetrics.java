@@ -0,0 +1,183 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Takashi Harano
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.libutil.excelreader;
+
+/**
+ * The phase timings and the counters of a sheet load.<br>
+ * The times are in nanoseconds. The book phases (open, shared strings and
+ * styles) are spent once per opened file, so that the sheets loaded from the
+ * same file report the same values for them. The values and colors of the lazy
+ * load resolved after the load are not counted.
+ */
+public final class LoadingMetrics {
+
+  long openTime;
+  long sharedStringsTime;
+  long stylesTableTime;
+  long sheetTime;
+  long styleTime;
+  long formatTime;
+
+  long rowCount;
+  long cellCount;
+  long bytesInflated;
+  long stylesResolved;
+  long styleCacheHits;
+  long sharedStringCacheHits;
+
+  LoadingMetrics() {
+  }
+
+  /**
+   * Returns the time to open the package and read the book structure.
+   *
+   * @return the time in nanoseconds
+   */
+  public long getOpenTime() {
+    return openTime;
+  }
+
+  /**
+   * Returns the time to read the shared strings table.
+   *
+   * @return the time in nanoseconds
+   */
+  public long getSharedStringsTime() {
+    return sharedStringsTime;
+  }
+
+  /**
+   * Returns the time to read the styles table and to resolve the colors and
+   * number formats of the styles used in the sheet.
+   *
+   * @return the time in nanoseconds
+   */
+  public long getStylesTime() {
+    return stylesTableTime + styleTime;
+  }
+
+  /**
+   * Returns the time to inflate and parse the sheet part and to build the
+   * rows, excluding the style resolution and the value formatting.
+   *
+   * @return the time in nanoseconds
+   */
+  public long getParseTime() {
+    return sheetTime - styleTime - formatTime;
+  }
+
+  /**
+   * Returns the time to format the numeric values.
+   *
+   * @return the time in nanoseconds
+   */
+  public long getFormatTime() {
+    return formatTime;
+  }
+
+  /**
+   * Returns the total time of the phases.
+   *
+   * @return the time in nanoseconds
+   */
+  public long getTotalTime() {
+    return openTime + sharedStringsTime + stylesTableTime + sheetTime;
+  }
+
+  /**
+   * Returns the number of the rows passed to the values.
+   *
+   * @return the number of the rows
+   */
+  public long getRowCount() {
+    return rowCount;
+  }
+
+  /**
+   * Returns the number of the cells read from the sheet.
+   *
+   * @return the number of the cells
+   */
+  public long getCellCount() {
+    return cellCount;
+  }
+
+  /**
+   * Returns the uncompressed size of the sheet part read.
+   *
+   * @return the number of the bytes
+   */
+  public long getBytesInflated() {
+    return bytesInflated;
+  }
+
+  /**
+   * Returns the number of the styles resolved from the styles table.
+   *
+   * @return the number of the styles
+   */
+  public long getStylesResolved() {
+    return stylesResolved;
+  }
+
+  /**
+   * Returns the number of the cell styles found in the resolved style cache.
+   *
+   * @return the number of the hits
+   */
+  public long getStyleCacheHits() {
+    return styleCacheHits;
+  }
+
+  /**
+   * Returns the number of the shared strings found already decoded.
+   *
+   * @return the number of the hits
+   */
+  public long getSharedStringCacheHits() {
+    return sharedStringCacheHits;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    sb.append("open=").append(toMillis(openTime)).append("ms");
+    sb.append(" sharedStrings=").append(toMillis(sharedStringsTime)).append("ms");
+    sb.append(" styles=").append(toMillis(getStylesTime())).append("ms");
+    sb.append(" parse=").append(toMillis(getParseTime())).append("ms");
+    sb.append(" format=").append(toMillis(formatTime)).append("ms");
+    sb.append(" rows=").append(rowCount);
+    sb.append(" cells=").append(cellCount);
+    sb.append(" bytesInflated=").append(bytesInflated);
+    sb.append(" stylesResolved=").append(stylesResolved);
+    sb.append(" styleCacheHits=").append(styleCacheHits);
+    sb.append(" sharedStringCacheHits=").append(sharedStringCacheHits);
+    return sb.toString();
+  }
+
+  private static long toMillis(long nanos) {
+    return nanos / 1000000;
+  }
+
+}
@@ -0,0 +1,469 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Takashi Harano
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.libutil.excelreader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The sheet values read directly from the memory-mapped snapshot.<br>
+ * The values are decoded from the mapped file on each access without building
+ * the Cell objects, so that a large sheet does not take the heap, and the
+ * processes on the same host share the page cache of the file. The snapshot
+ * larger than 2 GB is mapped in multiple regions. The object is thread-safe.
+ * The mapping is released when the object is garbage collected.
+ */
+public class MappedSheetValues {
+
+  // The regions overlap so that any record or string up to OVERLAP bytes can
+  // be read from a single region.
+  private static final int REGION_SHIFT = 30;
+  private static final long REGION_SIZE = 1L << REGION_SHIFT;
+  private static final long OVERLAP = 1L << 20;
+
+  private static final int HEADER_POSITION_SHEET_NAME_LENGTH = 64;
+
+  private static final long NOT_ASCII = Long.MIN_VALUE + 1;
+
+  private final MappedByteBuffer[] regions;
+  private final String sheetName;
+  private final long stringCount;
+  private final long stringOffsetsPosition;
+  private final long stringDataPosition;
+  private final int rowCount;
+  private final long rowPositionsPosition;
+
+  /**
+   * Maps the snapshot file.
+   *
+   * @param snapshot
+   *          the snapshot file
+   * @throws IOException
+   *           If an I/O error occurs or the file is not a snapshot
+   */
+  MappedSheetValues(File snapshot) throws IOException {
+    try (FileChannel channel = FileChannel.open(snapshot.toPath(), StandardOpenOption.READ)) {
+      long size = channel.size();
+      int n = (int) ((size + REGION_SIZE - 1) >>> REGION_SHIFT);
+      regions = new MappedByteBuffer[n];
+      for (int i = 0; i < n; i++) {
+        long position = i * REGION_SIZE;
+        long length = Math.min(size - position, REGION_SIZE + OVERLAP);
+        regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+      }
+      if ((size < SheetSnapshot.headerLength(0)) || (getInt(0) != SheetSnapshot.MAGIC) || (getInt(4) != SheetSnapshot.VERSION)) {
+        throw new IOException("Not a sheet snapshot: file=" + snapshot);
+      }
+
+      int nameLength = getInt(HEADER_POSITION_SHEET_NAME_LENGTH);
+      sheetName = new String(getBytes(HEADER_POSITION_SHEET_NAME_LENGTH + 4, nameLength), StandardCharsets.UTF_8);
+      long position = SheetSnapshot.headerLength(nameLength);
+      stringCount = getInt(position);
+      stringOffsetsPosition = position + 4;
+      stringDataPosition = stringOffsetsPosition + 8 * (stringCount + 1);
+      position = stringDataPosition + getLong(stringOffsetsPosition + 8 * stringCount);
+      rowCount = getInt(position);
+      rowPositionsPosition = position + 4;
+      if (rowPositionsPosition + 8L * rowCount > size) {
+        throw new IOException("Broken sheet snapshot: file=" + snapshot);
+      }
+    }
+  }
+
+  /**
+   * Returns the sheet name.
+   *
+   * @return the sheet name
+   */
+  public String getSheetName() {
+    return sheetName;
+  }
+
+  /**
+   * Returns the number of rows.
+   *
+   * @return the number of rows
+   */
+  public int size() {
+    return rowCount;
+  }
+
+  /**
+   * Returns the data for the row specified by rowIndex. The row is built from
+   * the snapshot.
+   *
+   * @param rowIndex
+   *          The index of row (1-1048576)
+   * @return row data
+   */
+  public SheetRow getRow(int rowIndex) {
+    long rowPosition = getRowPosition(rowIndex);
+    int width = getInt(rowPosition);
+    int cellCount = getInt(rowPosition + 4);
+    SparseSheetRow.Builder rowBuilder = new SparseSheetRow.Builder();
+    for (int k = 0; k < cellCount; k++) {
+      long record = rowPosition + 8 + (long) k * SheetSnapshot.CELL_RECORD_SIZE;
+      rowBuilder.add(getInt(record), newCell(record));
+    }
+    return rowBuilder.build(width);
+  }
+
+  /**
+   * Returns the cell object corresponding to the position specified by col and
+   * row. The cell is built from the snapshot.
+   *
+   * @param col
+   *          The position of column (A-XFD)
+   * @param row
+   *          The index of row (1-1048576)
+   * @return The cell object
+   */
+  public Cell getCell(String col, int row) {
+    return getCell(ExcelStringUtil.xlscol(col), row);
+  }
+
+  /**
+   * Returns the cell object corresponding to the position specified by col and
+   * row. The cell is built from the snapshot.
+   *
+   * @param col
+   *          The position of column (1-16384)
+   * @param row
+   *          The index of row (1-1048576)
+   * @return The cell object
+   */
+  public Cell getCell(int col, int row) {
+    long record = findCell(col, row);
+    if (record < 0) {
+      return Cell.EMPTY;
+    }
+    return newCell(record);
+  }
+
+  /**
+   * Returns the value of the cell corresponding to the position specified by col
+   * and row.
+   *
+   * @param col
+   *          The position of column (A-XFD)
+   * @param row
+   *          The index of row (1-1048576)
+   * @return The value of the cell
+   */
+  public String getValue(String col, int row) {
+    return getValue(ExcelStringUtil.xlscol(col), row);
+  }
+
+  /**
+   * Returns the value of the cell corresponding to the position specified by col
+   * and row.
+   *
+   * @param col
+   *          The position of column (1-16384)
+   * @param row
+   *          The index of row (1-1048576)
+   * @return The value of the cell
+   */
+  public String getValue(int col, int row) {
+    long record = findCell(col, row);
+    if (record < 0) {
+      return "";
+    }
+    return getString(getInt(record + 5));
+  }
+
+  /**
+   * Returns the value of the cell corresponding to the position specified by col
+   * and row as an integer.
+   *
+   * @param col
+   *          The position of column (A-XFD)
+   * @param row
+   *          The index of row (1-1048576)
+   * @return The value of the cell
+   */
+  public int getIntValue(String col, int row) {
+    return getIntValue(ExcelStringUtil.xlscol(col), row);
+  }
+
+  /**
+   * Returns the value of the cell corresponding to the position specified by col
+   * and row as an integer.
+   *
+   * @param col
+   *          The position of column (1-16384)
+   * @param row
+   *          The index of row (1-1048576)
+   * @return The value of the cell
+   */
+  public int getIntValue(int col, int row) {
+    long record = findCell(col, row);
+    if (record < 0) {
+      return 0;
+    }
+    int index = getInt(record + 5);
+    if (index < 0) {
+      return 0;
+    }
+    long v = parseInteger(index, Integer.MIN_VALUE, Integer.MAX_VALUE);
+    if (v == NOT_ASCII) {
+      return ExcelStringUtil.toInteger(getString(index));
+    }
+    return (int) v;
+  }
+
+  /**
+   * Returns the value of the cell corresponding to the position specified by col
+   * and row as a long.
+   *
+   * @param col
+   *          The position of column (A-XFD)
+   * @param row
+   *          The index of row (1-1048576)
+   * @return The value of the cell
+   */
+  public long getLongValue(String col, int row) {
+    return getLongValue(ExcelStringUtil.xlscol(col), row);
+  }
+
+  /**
+   * Returns the value of the cell corresponding to the position specified by col
+   * and row as a long.
+   *
+   * @param col
+   *          The position of column (1-16384)
+   * @param row
+   *          The index of row (1-1048576)
+   * @return The value of the cell
+   */
+  public long getLongValue(int col, int row) {
+    long record = findCell(col, row);
+    if (record < 0) {
+      return 0L;
+    }
+    int index = getInt(record + 5);
+    if (index < 0) {
+      return 0L;
+    }
+    long v = parseInteger(index, Long.MIN_VALUE, Long.MAX_VALUE);
+    if (v == NOT_ASCII) {
+      return ExcelStringUtil.toLong(getString(index));
+    }
+    return v;
+  }
+
+  /**
+   * Returns if the cell value at the column position is empty.
+   *
+   * @param col
+   *          The position of column (A-XFD)
+   * @param row
+   *          The index of row (1-1048576)
+   * @return true if the value is empty
+   */
+  public boolean isEmpty(String col, int row) {
+    return isEmpty(ExcelStringUtil.xlscol(col), row);
+  }
+
+  /**
+   * Returns if the cell value at the column position is empty.
+   *
+   * @param col
+   *          The position of column (1-16384)
+   * @param row
+   *          The index of row (1-1048576)
+   * @return true if the value is empty
+   */
+  public boolean isEmpty(int col, int row) {
+    long record = findCell(col, row);
+    if (record < 0) {
+      return true;
+    }
+    int index = getInt(record + 5);
+    return (index < 0) || (getStringLength(index) == 0);
+  }
+
+  private long getRowPosition(int rowIndex) {
+    int index = rowIndex - 1;
+    if ((index < 0) || (index >= rowCount)) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + rowCount);
+    }
+    return getLong(rowPositionsPosition + 8L * index);
+  }
+
+  /**
+   * Returns the position of the cell record, or -1 if the cell does not exist
+   * in the sheet.
+   */
+  private long findCell(int col, int row) {
+    long rowPosition = getRowPosition(row);
+    int width = getInt(rowPosition);
+    int colIndex = col - 1;
+    if ((colIndex < 0) || (colIndex >= width)) {
+      // The same error as SheetRow#getCell()
+      String msg = "Get cell error: col=" + col + "(" + ExcelStringUtil.xlscol(col) + ") : last col=" + width + "(" + ExcelStringUtil.xlscol(width) + ")";
+      throw new RuntimeException(msg, new IndexOutOfBoundsException("Index: " + colIndex + ", Size: " + width));
+    }
+    long records = rowPosition + 8;
+    int low = 0;
+    int high = getInt(rowPosition + 4) - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      long record = records + (long) mid * SheetSnapshot.CELL_RECORD_SIZE;
+      int c = getInt(record);
+      if (c < colIndex) {
+        low = mid + 1;
+      } else if (c > colIndex) {
+        high = mid - 1;
+      } else {
+        return record;
+      }
+    }
+    return -1;
+  }
+
+  private Cell newCell(long record) {
+    Cell cell = new Cell();
+    cell.setCellType(getByte(record + 4));
+    cell.setValue(getString(getInt(record + 5)));
+    cell.setFormula(getString(getInt(record + 9)));
+    cell.setColors(Cell.Colors.of(getString(getInt(record + 13)), getString(getInt(record + 17))));
+    if (cell.getCellType() == Cell.CELL_TYPE_NUMERIC) {
+      cell.storeNumber();
+    }
+    return cell;
+  }
+
+  private long getStringPosition(int index) {
+    return stringDataPosition + getLong(stringOffsetsPosition + 8L * index);
+  }
+
+  private int getStringLength(int index) {
+    long offset = stringOffsetsPosition + 8L * index;
+    return (int) (getLong(offset + 8) - getLong(offset));
+  }
+
+  private String getString(int index) {
+    if (index < 0) {
+      return null;
+    }
+    byte[] b = getBytes(getStringPosition(index), getStringLength(index));
+    return new String(b, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Parses the string as ExcelStringUtil.toInteger() and toLong() do, without
+   * decoding it. Returns 0 for a parse error, or NOT_ASCII if the string has
+   * a non-ASCII character, which may be a digit of another script.
+   */
+  private long parseInteger(int index, long min, long max) {
+    long start = getStringPosition(index);
+    long end = start + getStringLength(index);
+    for (long p = start; p < end; p++) {
+      if (getByte(p) < 0) {
+        return NOT_ASCII;
+      }
+    }
+    // String#trim()
+    while ((start < end) && ((getByte(start) & 0xff) <= ' ')) {
+      start++;
+    }
+    while ((start < end) && ((getByte(end - 1) & 0xff) <= ' ')) {
+      end--;
+    }
+    if (start == end) {
+      return 0;
+    }
+
+    // Long#parseLong()
+    boolean negative = false;
+    long limit = -max;
+    byte first = getByte(start);
+    if ((first == '-') || (first == '+')) {
+      if (first == '-') {
+        negative = true;
+        limit = min;
+      }
+      start++;
+      if (start == end) {
+        return 0;
+      }
+    }
+    long multmin = limit / 10;
+    long result = 0;
+    for (long p = start; p < end; p++) {
+      int digit = getByte(p) - '0';
+      if ((digit < 0) || (digit > 9) || (result < multmin)) {
+        return 0;
+      }
+      result *= 10;
+      if (result < limit + digit) {
+        return 0;
+      }
+      result -= digit;
+    }
+    return negative ? result : -result;
+  }
+
+  private MappedByteBuffer region(long position) {
+    return regions[(int) (position >>> REGION_SHIFT)];
+  }
+
+  private static int offset(long position) {
+    return (int) (position & (REGION_SIZE - 1));
+  }
+
+  private byte getByte(long position) {
+    return region(position).get(offset(position));
+  }
+
+  private int getInt(long position) {
+    return region(position).getInt(offset(position));
+  }
+
+  private long getLong(long position) {
+    return region(position).getLong(offset(position));
+  }
+
+  private byte[] getBytes(long position, int length) {
+    byte[] b = new byte[length];
+    if (length <= OVERLAP) {
+      MappedByteBuffer region = region(position);
+      int offset = offset(position);
+      for (int i = 0; i < length; i++) {
+        b[i] = region.get(offset + i);
+      }
+    } else {
+      for (int i = 0; i < length; i++) {
+        b[i] = getByte(position + i);
+      }
+    }
+    return b;
+  }
+
+}
@@ -0,0 +1,131 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Takashi Harano
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.libutil.excelreader;
+
+/**
+ * The number that is shown as a plain decimal text, e.g. "123", "-0.25".<br>
+ * The number can be converted back to exactly the same text, so that it can be
+ * kept as a double instead of the text, and the typed values of the text can
+ * be returned without parsing it.
+ */
+class PlainNumber {
+
+  private PlainNumber() {
+  }
+
+  /**
+   * Returns the number of the text if the number is converted back to the same
+   * text.
+   *
+   * @param s
+   *          the text
+   * @return the number / NaN if the text is not a plain number
+   */
+  static double parse(String s) {
+    if ((s == null) || s.isEmpty()) {
+      return Double.NaN;
+    }
+    char c = s.charAt(0);
+    if (!(((c >= '0') && (c <= '9')) || (c == '-'))) {
+      return Double.NaN;
+    }
+    double v;
+    try {
+      v = Double.parseDouble(s);
+    } catch (NumberFormatException e) {
+      return Double.NaN;
+    }
+    if (!s.equals(toText(v))) {
+      return Double.NaN;
+    }
+    return v;
+  }
+
+  /**
+   * Returns the plain text of the number.
+   *
+   * @param v
+   *          the number
+   * @return the text / null if the number has no plain text
+   */
+  static String toText(double v) {
+    if (Double.isNaN(v) || Double.isInfinite(v)) {
+      return null;
+    }
+    if (isIntegral(v)) {
+      return Long.toString((long) v);
+    }
+    String s = Double.toString(v);
+    if (s.indexOf('E') >= 0) {
+      return null;
+    }
+    return s;
+  }
+
+  /**
+   * Returns if the number is shown as an integer text.
+   *
+   * @param v
+   *          the number
+   * @return true if the number is an integer
+   */
+  static boolean isIntegral(double v) {
+    return (v == Math.rint(v)) && (Math.abs(v) < 1e15);
+  }
+
+  /**
+   * Returns the number as an int in the same way as
+   * ExcelStringUtil.toInteger() does with the text.
+   *
+   * @param v
+   *          the number
+   * @param defaultValue
+   *          value for parse error
+   * @return an integer value
+   */
+  static int toInt(double v, int defaultValue) {
+    if (isIntegral(v) && (v >= Integer.MIN_VALUE) && (v <= Integer.MAX_VALUE)) {
+      return (int) v;
+    }
+    return defaultValue;
+  }
+
+  /**
+   * Returns the number as a long in the same way as ExcelStringUtil.toLong()
+   * does with the text.
+   *
+   * @param v
+   *          the number
+   * @param defaultValue
+   *          value for parse error
+   * @return a long value
+   */
+  static long toLong(double v, long defaultValue) {
+    if (isIntegral(v)) {
+      return (long) v;
+    }
+    return defaultValue;
+  }
+
+}
@@ -0,0 +1,77 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Takashi Harano
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.libutil.excelreader;
+
+import org.apache.poi.xssf.model.SharedStrings;
+
+/**
+ * The decoded strings of the shared strings table of a book.<br>
+ * The strings are decoded on first use and shared by all sheets of the book.
+ * It can be used from multiple threads concurrently.
+ */
+class SharedStringCache {
+
+  private final SharedStrings sharedStrings;
+  private final String[] strings;
+
+  /**
+   * Creates the cache.
+   *
+   * @param sharedStrings
+   *          the shared strings table
+   */
+  SharedStringCache(SharedStrings sharedStrings) {
+    this.sharedStrings = sharedStrings;
+    this.strings = new String[Math.max(sharedStrings.getUniqueCount(), 0)];
+  }
+
+  /**
+   * Returns the string of the shared strings table.<br>
+   * The string is decoded once per index for the book, and the same instance
+   * is shared by all cells of the same string in all sheets. The sheets read
+   * concurrently may decode the same string at the same time, which is
+   * harmless because the strings are immutable.
+   *
+   * @param index
+   *          the index of the shared string
+   * @param metrics
+   *          the metrics of the load / null
+   * @return the string
+   */
+  String get(int index, LoadingMetrics metrics) {
+    if ((index < 0) || (index >= strings.length)) {
+      return sharedStrings.getItemAt(index).getString();
+    }
+    String s = strings[index];
+    if (s == null) {
+      s = sharedStrings.getItemAt(index).getString();
+      strings[index] = s;
+    } else if (metrics != null) {
+      metrics.sharedStringCacheHits++;
+    }
+    return s;
+  }
+
+
+}
@@ -0,0 +1,373 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Takashi Harano
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.libutil.excelreader;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * The cache of the loaded sheets shared by the threads.<br>
+ * The sheets are loaded with the streaming parser and kept in the least
+ * recently used order within the memory budget. An entry is looked up by the
+ * file path, the sheet name and the load bounds, and is reloaded when the last
+ * modified time or the size of the file has changed. When multiple threads
+ * request the same sheet at the same time, it is loaded once by the first
+ * thread and the others wait for it. The memory of a sheet is estimated by its
+ * rows, cells and strings. A sheet larger than the budget is returned without
+ * being cached.<br>
+ * The cached values are shared by all callers, so they must not be modified.
+ *
+ * <pre>
+ * SheetCache cache = new SheetCache(64 * 1024 * 1024);
+ * SheetValues values = cache.get("definitions.xlsx", "Sheet1");
+ * </pre>
+ */
+public class SheetCache {
+
+  private final long maxMemory;
+
+  // The entries in the access order. (guarded by this)
+  private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private long memory;
+
+  private long hitCount;
+  private long missCount;
+  private long loadFailureCount;
+  private long evictionCount;
+
+  /**
+   * Creates the cache.
+   *
+   * @param maxMemory
+   *          The maximum estimated bytes of the cached sheets
+   */
+  public SheetCache(long maxMemory) {
+    if (maxMemory < 1) {
+      throw new IllegalArgumentException("maxMemory must be greater than 0: " + maxMemory);
+    }
+    this.maxMemory = maxMemory;
+  }
+
+  /**
+   * Returns the sheet values from the cache, or loads them if they are not
+   * cached or the file has changed.
+   *
+   * @param filePath
+   *          The Excel file path
+   * @param sheetName
+   *          The sheet name
+   * @return Two-dimensional array of read contents
+   * @throws IOException
+   *           If an I/O error occurs
+   */
+  public SheetValues get(String filePath, String sheetName) throws IOException {
+    return get(filePath, sheetName, 0, 0);
+  }
+
+  /**
+   * Returns the sheet values from the cache, or loads them if they are not
+   * cached or the file has changed.
+   *
+   * @param filePath
+   *          The Excel file path
+   * @param sheetName
+   *          The sheet name
+   * @param lastRowNum
+   *          Last line to load (1-1048576) / 0 for auto detection
+   * @param lastCellNum
+   *          Last column to load (1-16384) / 0 for auto detection
+   * @return Two-dimensional array of read contents
+   * @throws IOException
+   *           If an I/O error occurs
+   */
+  public SheetValues get(String filePath, String sheetName, int lastRowNum, int lastCellNum) throws IOException {
+    File file = new File(filePath).getAbsoluteFile();
+    Key key = new Key(file.getPath(), sheetName, lastRowNum, lastCellNum);
+    long lastModified = file.lastModified();
+    long length = file.length();
+
+    Entry entry;
+    boolean loader = false;
+    synchronized (this) {
+      entry = entries.get(key);
+      if ((entry != null) && (entry.lastModified == lastModified) && (entry.length == length)) {
+        hitCount++;
+      } else {
+        if (entry != null) {
+          remove(key, entry);
+        }
+        entry = new Entry(new FutureTask<>(() -> StreamingSheetLoader.loadSheetValues(file, sheetName, lastRowNum, lastCellNum, null, false)), lastModified, length);
+        entries.put(key, entry);
+        missCount++;
+        loader = true;
+      }
+    }
+
+    if (loader) {
+      entry.task.run();
+    }
+    SheetValues values;
+    try {
+      values = getValues(entry.task);
+    } catch (IOException | RuntimeException e) {
+      synchronized (this) {
+        if (loader) {
+          loadFailureCount++;
+        }
+        if (entries.get(key) == entry) {
+          entries.remove(key);
+        }
+      }
+      throw e;
+    }
+    if (loader) {
+      store(key, entry, values);
+    }
+    return values;
+  }
+
+  /**
+   * Removes the sheets of the file from the cache.
+   *
+   * @param filePath
+   *          The Excel file path
+   */
+  public synchronized void invalidate(String filePath) {
+    String path = new File(filePath).getAbsolutePath();
+    Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+    while (it.hasNext()) {
+      Map.Entry<Key, Entry> e = it.next();
+      if (e.getKey().path.equals(path)) {
+        memory -= e.getValue().memory;
+        it.remove();
+      }
+    }
+  }
+
+  /**
+   * Removes all sheets from the cache.
+   */
+  public synchronized void clear() {
+    entries.clear();
+    memory = 0;
+  }
+
+  /**
+   * Returns the number of the sheets in the cache, including the ones being
+   * loaded.
+   *
+   * @return the number of the sheets
+   */
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  /**
+   * Returns the estimated memory of the cached sheets.
+   *
+   * @return the size in bytes
+   */
+  public synchronized long getMemory() {
+    return memory;
+  }
+
+  /**
+   * Returns the maximum estimated memory of the cached sheets.
+   *
+   * @return the size in bytes
+   */
+  public long getMaxMemory() {
+    return maxMemory;
+  }
+
+  /**
+   * Returns the number of the requests that were served from the cache,
+   * including the ones that waited for the loading by another thread.
+   *
+   * @return the number of the hits
+   */
+  public synchronized long getHitCount() {
+    return hitCount;
+  }
+
+  /**
+   * Returns the number of the requests that loaded the sheet.
+   *
+   * @return the number of the misses
+   */
+  public synchronized long getMissCount() {
+    return missCount;
+  }
+
+  /**
+   * Returns the number of the loads that failed.
+   *
+   * @return the number of the failures
+   */
+  public synchronized long getLoadFailureCount() {
+    return loadFailureCount;
+  }
+
+  /**
+   * Returns the number of the sheets removed to keep the memory within the
+   * budget.
+   *
+   * @return the number of the evictions
+   */
+  public synchronized long getEvictionCount() {
+    return evictionCount;
+  }
+
+  /**
+   * Returns the ratio of the hits to the requests.
+   *
+   * @return the ratio (0.0-1.0) / 0.0 if no request has been made
+   */
+  public synchronized double getHitRate() {
+    long requests = hitCount + missCount;
+    return (requests == 0) ? 0.0 : (double) hitCount / requests;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "SheetCache [size=" + entries.size() + ", memory=" + memory + "/" + maxMemory + ", hits=" + hitCount + ", misses=" + missCount + ", evictions=" + evictionCount + "]";
+  }
+
+  private synchronized void store(Key key, Entry entry, SheetValues values) {
+    if (entries.get(key) != entry) {
+      // Invalidated or replaced while loading.
+      return;
+    }
+    long size = values.estimateSize();
+    if (size > maxMemory) {
+      entries.remove(key);
+      return;
+    }
+    entry.memory = size;
+    memory += size;
+
+    // Evicts the least recently used sheets that have been loaded.
+    Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+    while ((memory > maxMemory) && it.hasNext()) {
+      Map.Entry<Key, Entry> e = it.next();
+      Entry eldest = e.getValue();
+      if ((eldest == entry) || !eldest.task.isDone()) {
+        continue;
+      }
+      memory -= eldest.memory;
+      it.remove();
+      evictionCount++;
+    }
+  }
+
+  private void remove(Key key, Entry entry) {
+    entries.remove(key);
+    memory -= entry.memory;
+  }
+
+  private static SheetValues getValues(FutureTask<SheetValues> task) throws IOException {
+    boolean interrupted = false;
+    try {
+      while (true) {
+        try {
+          return task.get();
+        } catch (InterruptedException e) {
+          // The loading thread goes on, so waits for it.
+          interrupted = true;
+        }
+      }
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IOException("Failed to load the sheet", cause);
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * The key of a cached sheet.
+   */
+  private static class Key {
+    final String path;
+    final String sheetName;
+    final int lastRowNum;
+    final int lastCellNum;
+
+    Key(String path, String sheetName, int lastRowNum, int lastCellNum) {
+      this.path = path;
+      this.sheetName = sheetName;
+      this.lastRowNum = lastRowNum;
+      this.lastCellNum = lastCellNum;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key k = (Key) o;
+      return path.equals(k.path) && sheetName.equals(k.sheetName) && (lastRowNum == k.lastRowNum) && (lastCellNum == k.lastCellNum);
+    }
+
+    @Override
+    public int hashCode() {
+      int h = path.hashCode();
+      h = h * 31 + sheetName.hashCode();
+      h = h * 31 + lastRowNum;
+      h = h * 31 + lastCellNum;
+      return h;
+    }
+  }
+
+  /**
+   * A cached sheet, or the one being loaded.
+   */
+  private static class Entry {
+    final FutureTask<SheetValues> task;
+    final long lastModified;
+    final long length;
+    long memory;
+
+    Entry(FutureTask<SheetValues> task, long lastModified, long length) {
+      this.task = task;
+      this.lastModified = lastModified;
+      this.length = length;
+    }
+  }
+
+}
@@ -0,0 +1,469 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Takashi Harano
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.libutil.excelreader;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.poi.ss.util.CellReference;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * The SAX handler that reads the sheet part (xl/worksheets/sheetN.xml) and
+ * builds the rows in the same way as ExcelLoader does with XSSFWorkbook.
+ */
+class SheetContentHandler extends DefaultHandler {
+
+  private final SharedStringCache sharedStrings;
+  private final CellStyleResolver styleResolver;
+  private final boolean lazy;
+  private final int lastRowIndex;
+  private final int lastCellNum;
+  private final boolean[] columns;
+  private final SparseSheetRow.Builder rowBuilder = new SparseSheetRow.Builder();
+  private final LoadingMetrics metrics;
+
+  private final RowHandler rowHandler;
+  private int nextRowIndex;
+
+  // The empty rows that are passed to the handler when a row with values
+  // follows them. (null for the row that does not exist in the sheet)
+  private final List<SheetRow> pendingEmptyRows = new ArrayList<>();
+  private int pendingRowIndex;
+
+  // Current row (the list is reused for all rows)
+  private int rowIndex;
+  private final ArrayList<Cell> rowCells = new ArrayList<>();
+  private int rowValueCount;
+
+  // Current cell
+  private int colIndex;
+  private String cellType;
+  private int styleIndex;
+  private boolean skipCell;
+  private boolean hasValue;
+  private boolean hasFormula;
+  private String formulaType;
+  private String formulaSi;
+  private String formulaRef;
+  private final StringBuilder valueText = new StringBuilder();
+  private final StringBuilder formulaText = new StringBuilder();
+
+  // Text collecting state
+  private boolean inValue;
+  private boolean inFormula;
+  private boolean inInlineString;
+  private boolean inPhonetic;
+  private boolean inText;
+
+  private final Map<String, FormulaMaster> sharedFormulas = new HashMap<>();
+  private final List<FormulaMaster> arrayFormulas = new ArrayList<>();
+
+  /**
+   * Creates the handler.
+   *
+   * @param sharedStrings
+   *          the shared strings of the book
+   * @param styleResolver
+   *          the resolver of the cell values and colors by the style index
+   * @param lastRowNum
+   *          Last line to load (1-1048576) / 0 for auto detection
+   * @param lastCellNum
+   *          Last column to load (1-16384) / 0 for auto detection
+   * @param columns
+   *          the flags of the columns to load / null for all columns
+   * @param lazy
+   *          true to resolve the values, formulas and colors when they are
+   *          accessed
+   * @param rowHandler
+   *          the handler to receive the rows
+   * @param metrics
+   *          the metrics to count the rows and cells / null
+   */
+  SheetContentHandler(SharedStringCache sharedStrings, CellStyleResolver styleResolver, int lastRowNum, int lastCellNum, boolean[] columns, boolean lazy, RowHandler rowHandler, LoadingMetrics metrics) {
+    this.sharedStrings = sharedStrings;
+    this.styleResolver = styleResolver;
+    this.lazy = lazy;
+    this.lastRowIndex = (lastRowNum == 0) ? Integer.MAX_VALUE : lastRowNum;
+    this.lastCellNum = lastCellNum;
+    this.columns = columns;
+    this.rowHandler = rowHandler;
+    this.metrics = metrics;
+  }
+
+  @Override
+  public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+    if ("row".equals(localName)) {
+      startRow(attributes);
+    } else if ("c".equals(localName)) {
+      startCell(attributes);
+    } else if ("dimension".equals(localName)) {
+      startDimension(attributes);
+    } else if ("f".equals(localName)) {
+      startFormula(attributes);
+    } else if (skipCell) {
+      return;
+    } else if ("v".equals(localName)) {
+      inValue = true;
+      hasValue = true;
+    } else if ("is".equals(localName)) {
+      inInlineString = true;
+    } else if ("rPh".equals(localName)) {
+      inPhonetic = true;
+    } else if ("t".equals(localName)) {
+      inText = true;
+    }
+  }
+
+  @Override
+  public void endElement(String uri, String localName, String qName) throws SAXException {
+    if ("row".equals(localName)) {
+      endRow();
+    } else if ("c".equals(localName)) {
+      endCell();
+    } else if ("v".equals(localName)) {
+      inValue = false;
+    } else if ("f".equals(localName)) {
+      endFormula();
+    } else if ("is".equals(localName)) {
+      inInlineString = false;
+    } else if ("rPh".equals(localName)) {
+      inPhonetic = false;
+    } else if ("t".equals(localName)) {
+      inText = false;
+    } else if ("sheetData".equals(localName)) {
+      // Nothing to read after the cells.
+      throw new StopParsingException();
+    }
+  }
+
+  @Override
+  public void characters(char[] ch, int start, int length) throws SAXException {
+    if (inFormula) {
+      formulaText.append(ch, start, length);
+    } else if (skipCell) {
+      return;
+    } else if (inValue || (inInlineString && inText && !inPhonetic)) {
+      valueText.append(ch, start, length);
+    }
+  }
+
+  private void startRow(Attributes attributes) throws StopParsingException {
+    String r = attributes.getValue("r");
+    if (r == null) {
+      rowIndex = nextRowIndex;
+    } else {
+      rowIndex = Integer.parseInt(r) - 1;
+    }
+    if (rowIndex > lastRowIndex) {
+      throw new StopParsingException();
+    }
+
+    // The rows that do not exist in the sheet.
+    for (int i = nextRowIndex; i < rowIndex; i++) {
+      addEmptyRow(null);
+    }
+
+    rowCells.clear();
+    rowValueCount = 0;
+    colIndex = -1;
+  }
+
+  /**
+   * Sizes the buffers by the used range recorded in the sheet, and tells it to
+   * the row handler. The range is only a hint, so it is limited to the load
+   * bounds and not trusted beyond that.
+   */
+  private void startDimension(Attributes attributes) {
+    SheetInfo info = new SheetInfo(null, attributes.getValue("ref"), null, -1);
+    int rowCount = info.getRowCount();
+    int cellCount = info.getCellCount();
+    if ((rowCount == 0) || (cellCount == 0)) {
+      return;
+    }
+    if (lastRowIndex < rowCount - 1) {
+      rowCount = lastRowIndex + 1;
+    }
+    if ((lastCellNum > 0) && (lastCellNum < cellCount)) {
+      cellCount = lastCellNum;
+    }
+    rowCells.ensureCapacity(cellCount);
+    rowBuilder.ensureCapacity(cellCount);
+    if (rowHandler instanceof DimensionListener) {
+      ((DimensionListener) rowHandler).onDimension(rowCount, cellCount);
+    }
+  }
+
+  private void addEmptyRow(SheetRow row) {
+    if (pendingEmptyRows.isEmpty()) {
+      pendingRowIndex = nextRowIndex;
+    }
+    pendingEmptyRows.add(row);
+    nextRowIndex++;
+  }
+
+  private SheetRow newMissingRow() {
+    return rowBuilder.build(lastCellNum);
+  }
+
+  private void passRow(int index, SheetRow row) throws StopParsingException {
+    if (metrics != null) {
+      metrics.rowCount++;
+    }
+    if (!rowHandler.onRow(index + 1, row)) {
+      throw new StopParsingException();
+    }
+  }
+
+  private void endRow() throws StopParsingException {
+    int lastCellIndex = lastCellNum;
+    if (lastCellNum == 0) {
+      lastCellIndex = rowCells.size();
+    }
+
+    // The cells of the unselected columns are skipped when they are read.
+    int n = Math.min(lastCellIndex, rowCells.size());
+    for (int j = 0; j < n; j++) {
+      Cell cell = rowCells.get(j);
+      if (cell != null) {
+        rowBuilder.add(j, cell);
+      }
+    }
+    SheetRow row = rowBuilder.build(lastCellIndex);
+    rowCells.clear();
+
+    // If there is no value in Row, it will be counted as a useless row.
+    // The empty part of Last is useless, so it will not be passed.
+    if (rowValueCount == 0) {
+      addEmptyRow(row);
+      return;
+    }
+
+    for (int i = 0; i < pendingEmptyRows.size(); i++) {
+      SheetRow emptyRow = pendingEmptyRows.get(i);
+      if (emptyRow == null) {
+        emptyRow = newMissingRow();
+      }
+      passRow(pendingRowIndex + i, emptyRow);
+    }
+    pendingEmptyRows.clear();
+
+    passRow(rowIndex, row);
+    nextRowIndex = rowIndex + 1;
+  }
+
+  private void startCell(Attributes attributes) {
+    String r = attributes.getValue("r");
+    if (r == null) {
+      colIndex++;
+    } else {
+      colIndex = new CellReference(r).getCol();
+    }
+
+    skipCell = (lastCellNum > 0) && ((colIndex >= lastCellNum) || ((columns != null) && !columns[colIndex]));
+
+    hasFormula = false;
+    formulaType = null;
+    formulaSi = null;
+    formulaRef = null;
+    formulaText.setLength(0);
+    if (skipCell) {
+      return;
+    }
+
+    cellType = attributes.getValue("t");
+    String s = attributes.getValue("s");
+    styleIndex = (s == null) ? 0 : Integer.parseInt(s);
+
+    hasValue = false;
+    valueText.setLength(0);
+  }
+
+  private void startFormula(Attributes attributes) {
+    formulaType = attributes.getValue("t");
+    formulaRef = attributes.getValue("ref");
+    if ("dataTable".equals(formulaType)) {
+      return;
+    }
+    if (skipCell && (formulaRef == null)) {
+      // Only the shared and array masters of the skipped cells are read, since
+      // they can cover the cells of the selected columns.
+      return;
+    }
+    hasFormula = true;
+    inFormula = true;
+    formulaSi = attributes.getValue("si");
+  }
+
+  private void endFormula() {
+    if (!inFormula) {
+      return;
+    }
+    inFormula = false;
+    if (formulaRef == null) {
+      return;
+    }
+    FormulaMaster master = new FormulaMaster(formulaText.toString(), formulaRef);
+    if ("shared".equals(formulaType)) {
+      sharedFormulas.put(formulaSi, master);
+    } else if ("array".equals(formulaType)) {
+      arrayFormulas.add(master);
+    }
+  }
+
+  private void endCell() {
+    if (skipCell) {
+      skipCell = false;
+      return;
+    }
+
+    Cell cell = lazy ? new Cell.LazyCell() : new Cell();
+    String text = valueText.toString();
+    int type;
+    String value;
+    FormulaMaster.CellFormula sharedFormula = null;
+
+    String formula = getFormula();
+    if ((formula == null) && lazy) {
+      sharedFormula = getSharedFormula();
+    }
+    if ((formula != null) || (sharedFormula != null)) {
+      type = Cell.CELL_TYPE_FORMULA;
+      value = hasValue ? text : null;
+      cell.setFormula(formula);
+    } else if ("s".equals(cellType)) {
+      type = Cell.CELL_TYPE_STRING;
+      value = hasValue ? sharedStrings.get(Integer.parseInt(text.trim()), metrics) : "";
+    } else if ("inlineStr".equals(cellType) || "str".equals(cellType)) {
+      type = Cell.CELL_TYPE_STRING;
+      value = text;
+    } else if ("e".equals(cellType)) {
+      type = Cell.CELL_TYPE_ERROR;
+      value = text;
+    } else if ("b".equals(cellType)) {
+      type = Cell.CELL_TYPE_BOOLEAN;
+      value = hasValue ? text : "";
+    } else if (!hasValue || text.isEmpty()) {
+      type = Cell.CELL_TYPE_BLANK;
+      value = "";
+    } else {
+      type = Cell.CELL_TYPE_NUMERIC;
+      value = text;
+    }
+    cell.setCellType(type);
+
+    boolean valuePending = ((type == Cell.CELL_TYPE_BOOLEAN) || (type == Cell.CELL_TYPE_NUMERIC)) && !value.isEmpty();
+    // The booleans do not depend on the style and are formatted even when lazy.
+    if (valuePending && (!lazy || (type == Cell.CELL_TYPE_BOOLEAN))) {
+      value = styleResolver.formatValue(type, value, styleIndex, metrics);
+      valuePending = false;
+    }
+    cell.setValue(value);
+    if ((type == Cell.CELL_TYPE_NUMERIC) && !valuePending) {
+      cell.storeNumber();
+    }
+
+    if (lazy) {
+      ((Cell.LazyCell) cell).setLazyContents(styleResolver, styleIndex, valuePending, sharedFormula);
+    } else {
+      CellStyleCache.ResolvedStyle resolved = styleResolver.getStyle(styleIndex, metrics);
+      if (resolved != null) {
+        cell.setColors(resolved.colors);
+      }
+    }
+
+    // A pending value is not empty, even though the format may show nothing.
+    if (valuePending || !"".equals(value)) {
+      rowValueCount++;
+    }
+    if (metrics != null) {
+      metrics.cellCount++;
+    }
+
+    while (rowCells.size() <= colIndex) {
+      rowCells.add(null);
+    }
+    rowCells.set(colIndex, cell);
+  }
+
+  private String getFormula() {
+    if (hasFormula) {
+      if ("shared".equals(formulaType)) {
+        FormulaMaster master = sharedFormulas.get(formulaSi);
+        if (master != null) {
+          if (lazy) {
+            return null;
+          }
+          return master.getFormula(rowIndex, colIndex);
+        }
+      }
+      return formulaText.toString();
+    }
+    for (int i = 0; i < arrayFormulas.size(); i++) {
+      FormulaMaster master = arrayFormulas.get(i);
+      if (master.range.isInRange(rowIndex, colIndex)) {
+        return master.formula;
+      }
+    }
+    return null;
+  }
+
+  private FormulaMaster.CellFormula getSharedFormula() {
+    if (hasFormula && "shared".equals(formulaType)) {
+      FormulaMaster master = sharedFormulas.get(formulaSi);
+      if (master != null) {
+        return new FormulaMaster.CellFormula(master, rowIndex, colIndex);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Implemented by the row handlers that want the size of the sheet before the
+   * rows.
+   */
+  interface DimensionListener {
+    /**
+     * Called with the used range recorded in the sheet before the first row.
+     *
+     * @param rowCount
+     *          the number of the rows within the load bounds
+     * @param cellCount
+     *          the number of the cells of a row within the load bounds
+     */
+    void onDimension(int rowCount, int cellCount);
+  }
+
+  /**
+   * Thrown to stop parsing when the rest of the sheet is not needed.
+   */
+  static class StopParsingException extends SAXException {
+    private static final long serialVersionUID = 1L;
+  }
+
+}
@@ -0,0 +1,197 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Takashi Harano
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.libutil.excelreader;
+
+import org.apache.poi.ss.util.CellReference;
+
+/**
+ * The metadata of a sheet read from the start of the sheet part.<br>
+ * The used range is the one recorded by the application that saved the book
+ * in the dimension element. It is not checked against the cells, and some
+ * applications do not write it. In that case, the row and column numbers are
+ * 0.
+ */
+public class SheetInfo {
+
+  private final String name;
+  private final String dimension;
+  private final int firstRowNum;
+  private final int firstCellNum;
+  private final int lastRowNum;
+  private final int lastCellNum;
+  private final String tabColorRGBHex;
+  private final long partSize;
+
+  /**
+   * Creates the sheet info.
+   *
+   * @param name
+   *          the sheet name
+   * @param dimension
+   *          the ref of the dimension element / null
+   * @param tabColorRGBHex
+   *          the tab color / null
+   * @param partSize
+   *          the uncompressed size of the sheet part / -1 if unknown
+   */
+  SheetInfo(String name, String dimension, String tabColorRGBHex, long partSize) {
+    this.name = name;
+    this.dimension = dimension;
+    this.tabColorRGBHex = tabColorRGBHex;
+    this.partSize = partSize;
+
+    int[] range = parseRange(dimension);
+    this.firstRowNum = range[0];
+    this.firstCellNum = range[1];
+    this.lastRowNum = range[2];
+    this.lastCellNum = range[3];
+  }
+
+  /**
+   * Returns the sheet name.
+   *
+   * @return the sheet name
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Returns the used range of the sheet.
+   *
+   * @return the range like "A1:F20" / null if the sheet does not have it
+   */
+  public String getDimension() {
+    return dimension;
+  }
+
+  /**
+   * Returns the first row number of the used range.
+   *
+   * @return the row number (1-1048576) / 0 if unknown
+   */
+  public int getFirstRowNum() {
+    return firstRowNum;
+  }
+
+  /**
+   * Returns the first column number of the used range.
+   *
+   * @return the column number (1-16384) / 0 if unknown
+   */
+  public int getFirstCellNum() {
+    return firstCellNum;
+  }
+
+  /**
+   * Returns the last row number of the used range.
+   *
+   * @return the row number (1-1048576) / 0 if unknown
+   */
+  public int getLastRowNum() {
+    return lastRowNum;
+  }
+
+  /**
+   * Returns the last column number of the used range.
+   *
+   * @return the column number (1-16384) / 0 if unknown
+   */
+  public int getLastCellNum() {
+    return lastCellNum;
+  }
+
+  /**
+   * Returns the number of the rows that the loaders return at most.<br>
+   * The rows above the used range are loaded as empty rows, so it is the same
+   * as the last row number.
+   *
+   * @return the number of the rows / 0 if unknown
+   */
+  public int getRowCount() {
+    return lastRowNum;
+  }
+
+  /**
+   * Returns the number of the cells in a row that the loaders return at most.
+   *
+   * @return the number of the cells / 0 if unknown
+   */
+  public int getCellCount() {
+    return lastCellNum;
+  }
+
+  /**
+   * Returns the tab color of the sheet.
+   *
+   * @return the RGB hex string like "FF0000" / null if not set or not an RGB
+   *         color
+   */
+  public String getTabColorRGBHex() {
+    return tabColorRGBHex;
+  }
+
+  /**
+   * Returns the uncompressed size of the sheet part.
+   *
+   * @return the size in bytes / -1 if unknown
+   */
+  public long getPartSize() {
+    return partSize;
+  }
+
+  @Override
+  public String toString() {
+    return "SheetInfo [name=" + name + ", dimension=" + dimension + ", partSize=" + partSize + "]";
+  }
+
+  /**
+   * Parses the range like "A1:F20" or "A1".
+   *
+   * @return the first row, first column, last row and last column numbers, or
+   *         all 0 if the range is not valid
+   */
+  private static int[] parseRange(String ref) {
+    int[] range = new int[4];
+    if ((ref == null) || ref.isEmpty()) {
+      return range;
+    }
+    try {
+      int p = ref.indexOf(':');
+      CellReference first = new CellReference((p < 0) ? ref : ref.substring(0, p));
+      CellReference last = (p < 0) ? first : new CellReference(ref.substring(p + 1));
+      if ((first.getRow() < 0) || (first.getCol() < 0) || (last.getRow() < 0) || (last.getCol() < 0)) {
+        return range;
+      }
+      range[0] = first.getRow() + 1;
+      range[1] = first.getCol() + 1;
+      range[2] = last.getRow() + 1;
+      range[3] = last.getCol() + 1;
+    } catch (RuntimeException e) {
+      // Treated as unknown.
+    }
+    return range;
+  }
+
+}
@@ -503,4 +503,17 @@ public class SheetRow extends ArrayList<Cell> {
     return cell.isEmpty();
   }
 
+  /**
+   * Estimates the heap size of the row and its cells.
+   *
+   * @return the size in bytes
+   */
+  long estimateSize() {
+    long size = 40 + 4L * size();
+    for (Cell cell : this) {
+      size += cell.estimateSize();
+    }
+    return size;
+  }
+
 }
@@ -0,0 +1,647 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Takashi Harano
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.libutil.excelreader;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The binary snapshot of the sheet values.<br>
+ * The snapshot holds the values, formulas, colors and types of the cells, and
+ * is keyed by the size, the last modified time and the SHA-256 hash of the
+ * source file. It is read back without POI.<br>
+ * <br>
+ * The layout (big-endian):
+ *
+ * <pre>
+ * header : int magic, int version, long sourceSize, long sourceModified,
+ *          byte[32] sourceHash, int lastRowNum, int lastCellNum,
+ *          int sheetNameLength, byte[] sheetName (UTF-8)
+ * strings: int stringCount, long[stringCount + 1] offsets, byte[] data (UTF-8)
+ * rows   : int rowCount, long[rowCount] rowPositions,
+ *          { int width, int cellCount, cell[cellCount] } * rowCount
+ * cell   : int col (0-), byte type, int value, int formula, int fontColor,
+ *          int backgroundColor
+ * </pre>
+ *
+ * The strings are referred by the index (-1 for null), and the offsets are
+ * relative to the start of the data. The row positions are absolute in the
+ * file. The cells that do not exist in the sheet are not stored.
+ */
+class SheetSnapshot {
+
+  static final int MAGIC = 0x584C5353; // "XLSS"
+  static final int VERSION = 1;
+  static final int HASH_LENGTH = 32;
+  static final int CELL_RECORD_SIZE = 21;
+
+  private static final int HEADER_POSITION_SOURCE_MODIFIED = 16;
+
+  private static final String SUFFIX = ".snapshot";
+
+  private SheetSnapshot() {
+  }
+
+  /**
+   * Returns the sheet values from the snapshot in the directory if it is up to
+   * date, otherwise reads the sheet from the Excel file and writes the snapshot.
+   *
+   * @param source
+   *          the Excel file
+   * @param dir
+   *          the snapshot directory
+   * @param sheetName
+   *          the sheet name
+   * @param lastRowNum
+   *          Last line to load (1-1048576) / 0 for auto detection
+   * @param lastCellNum
+   *          Last column to load (1-16384) / 0 for auto detection
+   * @return the sheet values
+   * @throws IOException
+   *           If an I/O error occurs
+   */
+  static SheetValues load(File source, File dir, String sheetName, int lastRowNum, int lastCellNum) throws IOException {
+    if (!source.exists()) {
+      throw new RuntimeException("Excel file not found: file=" + source);
+    }
+    File snapshot = getSnapshotFile(dir, source, sheetName, lastRowNum, lastCellNum);
+    SheetValues values = read(snapshot, source, sheetName, lastRowNum, lastCellNum);
+    if (values != null) {
+      return values;
+    }
+    return loadAndWrite(snapshot, source, sheetName, lastRowNum, lastCellNum);
+  }
+
+  /**
+   * Writes the snapshot of the sheet to the directory unless it is up to date.
+   *
+   * @param source
+   *          the Excel file
+   * @param dir
+   *          the snapshot directory
+   * @param sheetName
+   *          the sheet name
+   * @param lastRowNum
+   *          Last line to load (1-1048576) / 0 for auto detection
+   * @param lastCellNum
+   *          Last column to load (1-16384) / 0 for auto detection
+   * @return the snapshot file
+   * @throws IOException
+   *           If an I/O error occurs
+   */
+  static File update(File source, File dir, String sheetName, int lastRowNum, int lastCellNum) throws IOException {
+    if (!source.exists()) {
+      throw new RuntimeException("Excel file not found: file=" + source);
+    }
+    File snapshot = getSnapshotFile(dir, source, sheetName, lastRowNum, lastCellNum);
+    for (int i = 0; !isUpToDate(snapshot, source, sheetName, lastRowNum, lastCellNum); i++) {
+      if (i == 3) {
+        throw new IOException("The Excel file keeps changing: file=" + source);
+      }
+      loadAndWrite(snapshot, source, sheetName, lastRowNum, lastCellNum);
+    }
+    return snapshot;
+  }
+
+  private static SheetValues loadAndWrite(File snapshot, File source, String sheetName, int lastRowNum, int lastCellNum) throws IOException {
+    SourceStamp stamp = SourceStamp.of(source);
+    SheetValues values = StreamingSheetLoader.loadSheetValues(source, sheetName, lastRowNum, lastCellNum, null, false);
+    // Not to save the values of a file that was being replaced.
+    if (stamp.isCurrent(source)) {
+      write(snapshot, stamp, sheetName, lastRowNum, lastCellNum, values);
+    }
+    return values;
+  }
+
+  private static boolean isUpToDate(File snapshot, File source, String sheetName, int lastRowNum, int lastCellNum) throws IOException {
+    if (!snapshot.isFile()) {
+      return false;
+    }
+    Header header;
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshot), 4096))) {
+      header = Header.read(in, snapshot.length());
+      if ((header == null) || !header.matches(source, sheetName, lastRowNum, lastCellNum)) {
+        return false;
+      }
+    } catch (EOFException | InvalidSnapshotException e) {
+      return false;
+    }
+    updateSourceModified(snapshot, header);
+    return true;
+  }
+
+  /**
+   * Returns the snapshot file of the sheet in the directory.
+   *
+   * @param dir
+   *          the snapshot directory
+   * @param source
+   *          the Excel file
+   * @param sheetName
+   *          the sheet name
+   * @param lastRowNum
+   *          Last line to load
+   * @param lastCellNum
+   *          Last column to load
+   * @return the snapshot file
+   */
+  static File getSnapshotFile(File dir, File source, String sheetName, int lastRowNum, int lastCellNum) {
+    String key = source.getAbsolutePath() + "\n" + sheetName + "\n" + lastRowNum + "\n" + lastCellNum;
+    byte[] digest = newDigest().digest(key.getBytes(StandardCharsets.UTF_8));
+    StringBuilder sb = new StringBuilder(source.getName()).append('-');
+    for (int i = 0; i < 8; i++) {
+      sb.append(String.format("%02x", digest[i]));
+    }
+    sb.append(SUFFIX);
+    return new File(dir, sb.toString());
+  }
+
+  /**
+   * Reads the snapshot if it matches the source file.
+   *
+   * @param snapshot
+   *          the snapshot file
+   * @param source
+   *          the Excel file
+   * @param sheetName
+   *          the sheet name
+   * @param lastRowNum
+   *          Last line to load
+   * @param lastCellNum
+   *          Last column to load
+   * @return the sheet values / null if the snapshot does not exist or is out of
+   *         date
+   * @throws IOException
+   *           If an I/O error occurs
+   */
+  static SheetValues read(File snapshot, File source, String sheetName, int lastRowNum, int lastCellNum) throws IOException {
+    if (!snapshot.isFile()) {
+      return null;
+    }
+    long length = snapshot.length();
+    Header header;
+    SheetValues values;
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshot), 65536))) {
+      header = Header.read(in, length);
+      if ((header == null) || !header.matches(source, sheetName, lastRowNum, lastCellNum)) {
+        return null;
+      }
+      values = readValues(in, length - headerLength(header.sheetNameLength));
+    } catch (EOFException | InvalidSnapshotException e) {
+      // Truncated by an interrupted write or broken.
+      return null;
+    }
+    updateSourceModified(snapshot, header);
+    return values;
+  }
+
+  /**
+   * Rewrites the last modified time of the source in the header after the
+   * content hash has been verified, so that the next loads do not hash the file
+   * again. The header is left as it is if the snapshot has been replaced in the
+   * meantime.
+   */
+  private static void updateSourceModified(File snapshot, Header header) {
+    if (header.verifiedModified == header.sourceModified) {
+      return;
+    }
+    try (RandomAccessFile file = new RandomAccessFile(snapshot, "rw")) {
+      file.seek(HEADER_POSITION_SOURCE_MODIFIED);
+      if (file.readLong() == header.sourceModified) {
+        file.seek(HEADER_POSITION_SOURCE_MODIFIED);
+        file.writeLong(header.verifiedModified);
+      }
+    } catch (IOException e) {
+      // The snapshot is still valid, and the hash is verified again next time.
+    }
+  }
+
+  /**
+   * Writes the snapshot of the sheet values. The file is replaced atomically
+   * where the file system supports it.
+   *
+   * @param snapshot
+   *          the snapshot file
+   * @param stamp
+   *          the stamp of the source file taken before the values were loaded
+   * @param sheetName
+   *          the sheet name
+   * @param lastRowNum
+   *          Last line to load
+   * @param lastCellNum
+   *          Last column to load
+   * @param values
+   *          the sheet values
+   * @throws IOException
+   *           If an I/O error occurs
+   */
+  static void write(File snapshot, SourceStamp stamp, String sheetName, int lastRowNum, int lastCellNum, SheetValues values) throws IOException {
+    // The string table
+    List<String> strings = new ArrayList<>();
+    Map<String, Integer> stringIndex = new HashMap<>();
+    int rowCount = values.size();
+    int[][] cellRefs = new int[rowCount][];
+    for (int i = 0; i < rowCount; i++) {
+      SheetRow row = values.get(i);
+      int width = row.size();
+      int[] refs = new int[width * 5];
+      int n = 0;
+      for (int j = 0; j < width; j++) {
+        Cell cell = row.get(j);
+        if (cell == Cell.EMPTY) {
+          continue;
+        }
+        refs[n++] = j;
+        refs[n++] = index(strings, stringIndex, cell.getValue());
+        refs[n++] = index(strings, stringIndex, cell.getFormula());
+        refs[n++] = index(strings, stringIndex, cell.getFontColorRGBHex());
+        refs[n++] = index(strings, stringIndex, cell.getBackgroundColorRGBHex());
+      }
+      cellRefs[i] = Arrays.copyOf(refs, n);
+    }
+    byte[][] stringBytes = new byte[strings.size()][];
+    for (int i = 0; i < stringBytes.length; i++) {
+      stringBytes[i] = strings.get(i).getBytes(StandardCharsets.UTF_8);
+    }
+
+    File dir = snapshot.getAbsoluteFile().getParentFile();
+    Files.createDirectories(dir.toPath());
+    File tmp = File.createTempFile(snapshot.getName(), ".tmp", dir);
+    try {
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 65536))) {
+        byte[] name = sheetName.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(stamp.size);
+        out.writeLong(stamp.modified);
+        out.write(stamp.hash);
+        out.writeInt(lastRowNum);
+        out.writeInt(lastCellNum);
+        out.writeInt(name.length);
+        out.write(name);
+
+        out.writeInt(stringBytes.length);
+        long offset = 0;
+        out.writeLong(offset);
+        for (int i = 0; i < stringBytes.length; i++) {
+          offset += stringBytes[i].length;
+          out.writeLong(offset);
+        }
+        for (int i = 0; i < stringBytes.length; i++) {
+          out.write(stringBytes[i]);
+        }
+
+        // DataOutputStream.size() cannot be used as it overflows at 2 GB.
+        long position = headerLength(name.length) + 4L + 8L * (stringBytes.length + 1) + offset + 4L + 8L * rowCount;
+        out.writeInt(rowCount);
+        for (int i = 0; i < rowCount; i++) {
+          out.writeLong(position);
+          position += 8 + (long) (cellRefs[i].length / 5) * CELL_RECORD_SIZE;
+        }
+        for (int i = 0; i < rowCount; i++) {
+          SheetRow row = values.get(i);
+          int[] refs = cellRefs[i];
+          out.writeInt(row.size());
+          out.writeInt(refs.length / 5);
+          for (int k = 0; k < refs.length; k += 5) {
+            out.writeInt(refs[k]);
+            out.writeByte(row.get(refs[k]).getCellType());
+            out.writeInt(refs[k + 1]);
+            out.writeInt(refs[k + 2]);
+            out.writeInt(refs[k + 3]);
+            out.writeInt(refs[k + 4]);
+          }
+        }
+      }
+      try {
+        Files.move(tmp.toPath(), snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(tmp.toPath(), snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      Files.deleteIfExists(tmp.toPath());
+    }
+  }
+
+  static int headerLength(int sheetNameLength) {
+    return 4 + 4 + 8 + 8 + HASH_LENGTH + 4 + 4 + 4 + sheetNameLength;
+  }
+
+  private static int index(List<String> strings, Map<String, Integer> stringIndex, String s) {
+    if (s == null) {
+      return -1;
+    }
+    Integer index = stringIndex.get(s);
+    if (index == null) {
+      index = strings.size();
+      strings.add(s);
+      stringIndex.put(s, index);
+    }
+    return index;
+  }
+
+  /**
+   * Reads the strings and the rows. The counts and the lengths are checked
+   * against the remaining size of the file before anything is allocated.
+   */
+  private static SheetValues readValues(DataInputStream in, long remaining) throws IOException {
+    int stringCount = in.readInt();
+    remaining -= 4;
+    check((stringCount >= 0) && (8L * (stringCount + 1) <= remaining));
+    long[] offsets = new long[stringCount + 1];
+    for (int i = 0; i <= stringCount; i++) {
+      offsets[i] = in.readLong();
+    }
+    remaining -= 8L * (stringCount + 1);
+    check((offsets[0] == 0) && (offsets[stringCount] <= remaining));
+    String[] strings = new String[stringCount];
+    for (int i = 0; i < stringCount; i++) {
+      long length = offsets[i + 1] - offsets[i];
+      check((length >= 0) && (length <= Integer.MAX_VALUE));
+      byte[] b = new byte[(int) length];
+      in.readFully(b);
+      strings[i] = new String(b, StandardCharsets.UTF_8);
+    }
+    remaining -= offsets[stringCount];
+
+    int rowCount = in.readInt();
+    remaining -= 4;
+    check((rowCount >= 0) && (8L * rowCount <= remaining));
+    skipFully(in, 8L * rowCount);
+    remaining -= 8L * rowCount;
+    SheetValues values = new SheetValues();
+    values.ensureCapacity(rowCount);
+    SparseSheetRow.Builder rowBuilder = new SparseSheetRow.Builder();
+    Map<Long, Cell.Colors> colorsCache = new HashMap<>();
+    for (int i = 0; i < rowCount; i++) {
+      int width = in.readInt();
+      int cellCount = in.readInt();
+      remaining -= 8;
+      check((width >= 0) && (cellCount >= 0) && (cellCount <= width) && ((long) cellCount * CELL_RECORD_SIZE <= remaining));
+      remaining -= (long) cellCount * CELL_RECORD_SIZE;
+      int prevCol = -1;
+      for (int k = 0; k < cellCount; k++) {
+        int col = in.readInt();
+        check((col > prevCol) && (col < width));
+        prevCol = col;
+        Cell cell = new Cell();
+        cell.setCellType(in.readByte());
+        cell.setValue(string(strings, in.readInt()));
+        cell.setFormula(string(strings, in.readInt()));
+        cell.setColors(colors(colorsCache, strings, in.readInt(), in.readInt()));
+        if (cell.getCellType() == Cell.CELL_TYPE_NUMERIC) {
+          cell.storeNumber();
+        }
+        rowBuilder.add(col, cell);
+      }
+      values.add(rowBuilder.build(width));
+    }
+    return values;
+  }
+
+  /**
+   * Returns the colors of the string indexes, shared by the cells of the same
+   * colors.
+   */
+  private static Cell.Colors colors(Map<Long, Cell.Colors> colorsCache, String[] strings, int fontColorIndex, int backgroundColorIndex) throws InvalidSnapshotException {
+    Long key = ((long) fontColorIndex << 32) | (backgroundColorIndex & 0xFFFFFFFFL);
+    Cell.Colors colors = colorsCache.get(key);
+    if ((colors == null) && !colorsCache.containsKey(key)) {
+      colors = Cell.Colors.of(string(strings, fontColorIndex), string(strings, backgroundColorIndex));
+      colorsCache.put(key, colors);
+    }
+    return colors;
+  }
+
+  private static String string(String[] strings, int index) throws InvalidSnapshotException {
+    if (index < 0) {
+      return null;
+    }
+    check(index < strings.length);
+    return strings[index];
+  }
+
+  private static void check(boolean valid) throws InvalidSnapshotException {
+    if (!valid) {
+      throw new InvalidSnapshotException();
+    }
+  }
+
+  private static void skipFully(InputStream in, long n) throws IOException {
+    while (n > 0) {
+      long skipped = in.skip(n);
+      if (skipped <= 0) {
+        throw new EOFException();
+      }
+      n -= skipped;
+    }
+  }
+
+  static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      // Every Java platform supports SHA-256.
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * The size, the last modified time and the content hash of the source file.
+   */
+  static class SourceStamp {
+    final long size;
+    final long modified;
+    final byte[] hash;
+
+    private SourceStamp(long size, long modified, byte[] hash) {
+      this.size = size;
+      this.modified = modified;
+      this.hash = hash;
+    }
+
+    /**
+     * Takes the stamp of the file.
+     *
+     * @param file
+     *          the file
+     * @return the stamp
+     * @throws IOException
+     *           If an I/O error occurs
+     */
+    static SourceStamp of(File file) throws IOException {
+      long size = file.length();
+      long modified = file.lastModified();
+      return new SourceStamp(size, modified, hash(file));
+    }
+
+    /**
+     * Returns if the file has not been changed since the stamp was taken,
+     * without reading the content.
+     *
+     * @param file
+     *          the file
+     * @return true if the size and the last modified time are the same
+     */
+    boolean isCurrent(File file) {
+      return (file.length() == size) && (file.lastModified() == modified);
+    }
+
+    static byte[] hash(File file) throws IOException {
+      MessageDigest digest = newDigest();
+      byte[] buf = new byte[65536];
+      try (InputStream in = new FileInputStream(file)) {
+        int n;
+        while ((n = in.read(buf)) > 0) {
+          digest.update(buf, 0, n);
+        }
+      }
+      return digest.digest();
+    }
+  }
+
+  /**
+   * The header of the snapshot.
+   */
+  static class Header {
+    final long sourceSize;
+    final long sourceModified;
+    final byte[] sourceHash;
+    final int lastRowNum;
+    final int lastCellNum;
+    final int sheetNameLength;
+    final String sheetName;
+
+    // The last modified time of the source whose content hash has been verified.
+    long verifiedModified;
+
+    private Header(long sourceSize, long sourceModified, byte[] sourceHash, int lastRowNum, int lastCellNum, byte[] sheetName) {
+      this.sourceSize = sourceSize;
+      this.sourceModified = sourceModified;
+      this.sourceHash = sourceHash;
+      this.lastRowNum = lastRowNum;
+      this.lastCellNum = lastCellNum;
+      this.sheetNameLength = sheetName.length;
+      this.sheetName = new String(sheetName, StandardCharsets.UTF_8);
+      this.verifiedModified = sourceModified;
+    }
+
+    /**
+     * Reads the header.
+     *
+     * @param in
+     *          the input positioned at the start of the snapshot
+     * @param length
+     *          the length of the snapshot file
+     * @return the header / null if it is not a snapshot of this version
+     * @throws IOException
+     *           If an I/O error occurs
+     */
+    static Header read(DataInputStream in, long length) throws IOException {
+      if ((in.readInt() != MAGIC) || (in.readInt() != VERSION)) {
+        return null;
+      }
+      long size = in.readLong();
+      long modified = in.readLong();
+      byte[] hash = new byte[HASH_LENGTH];
+      in.readFully(hash);
+      int lastRowNum = in.readInt();
+      int lastCellNum = in.readInt();
+      int nameLength = in.readInt();
+      check((nameLength >= 0) && (headerLength(0) + (long) nameLength <= length));
+      byte[] name = new byte[nameLength];
+      in.readFully(name);
+      return new Header(size, modified, hash, lastRowNum, lastCellNum, name);
+    }
+
+    /**
+     * Returns if the snapshot is of the sheet of the source file as it is now.
+     * The content hash is compared only when the last modified time differs,
+     * e.g., the file is copied again with the same content. The time is then
+     * kept in verifiedModified to be written to the header.
+     *
+     * @param source
+     *          the Excel file
+     * @param sheetName
+     *          the sheet name
+     * @param lastRowNum
+     *          Last line to load
+     * @param lastCellNum
+     *          Last column to load
+     * @return true if the snapshot is up to date
+     * @throws IOException
+     *           If an I/O error occurs
+     */
+    boolean matches(File source, String sheetName, int lastRowNum, int lastCellNum) throws IOException {
+      if (!this.sheetName.equals(sheetName) || (this.lastRowNum != lastRowNum) || (this.lastCellNum != lastCellNum)) {
+        return false;
+      }
+      if (source.length() != sourceSize) {
+        return false;
+      }
+      long modified = source.lastModified();
+      if (modified == sourceModified) {
+        return true;
+      }
+      if (!Arrays.equals(SourceStamp.hash(source), sourceHash)) {
+        return false;
+      }
+      if ((source.length() != sourceSize) || (source.lastModified() != modified)) {
+        // Changed while it was being hashed.
+        return false;
+      }
+      verifiedModified = modified;
+      return true;
+    }
+  }
+
+  /**
+   * Thrown when a count or a length in the snapshot is out of range. The
+   * snapshot is treated as out of date.
+   */
+  static class InvalidSnapshotException extends IOException {
+    private static final long serialVersionUID = 1L;
+  }
+
+}
@@ -191,4 +191,37 @@ public class SheetValues extends ArrayList<SheetRow> {
     return cell.isEmpty();
   }
 
+  /**
+   * Returns the copy of the values that cannot be modified, to be shared by
+   * multiple threads.<br>
+   * The rows keep only the populated cells in the arrays of the exact size.
+   * The cells have all contents resolved, including the ones of the lazy mode,
+   * and do not keep the XSSFCell, so that the workbook can be garbage collected.
+   * Reading the frozen values does not modify anything, and the values are
+   * safely published to the other threads however the reference is passed.
+   * The methods to modify the values, the rows and the cells throw
+   * UnsupportedOperationException.
+   *
+   * @return the frozen values. If the values are already frozen, they are
+   *         returned as they are.
+   */
+  public SheetValues freeze() {
+    return new FrozenSheetValues(this);
+  }
+
+  /**
+   * Estimates the heap size of the values.
+   *
+   * @return the size in bytes
+   */
+  long estimateSize() {
+    long size = 40 + 4L * size();
+    for (SheetRow row : this) {
+      if (row != null) {
+        size += row.estimateSize();
+      }
+    }
+    return size;
+  }
+
 }
@@ -0,0 +1,501 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Takashi Harano
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.libutil.excelreader;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * The row that stores only the populated cells.<br>
+ * The cells are kept with the sorted column indexes, and the shared empty cell
+ * is returned for the gaps. The row is converted to the ordinary list of the
+ * cells when it is modified, unless it is frozen. A frozen row cannot be
+ * modified.<br>
+ * The sparse cells are not in the storage of ArrayList, so all methods that
+ * read it are overridden, including the ones of SequencedList.
+ */
+class SparseSheetRow extends SheetRow implements SequencedList<Cell> {
+
+  private static final long serialVersionUID = 1L;
+
+  // The sparse cells. (null after the row is converted to the list)
+  private transient int[] cols;
+  private transient Cell[] cells;
+  private transient int width;
+  private final transient boolean frozen;
+
+  private SparseSheetRow(int width, int[] cols, Cell[] cells, boolean frozen) {
+    this.width = width;
+    this.cols = cols;
+    this.cells = cells;
+    this.frozen = frozen;
+  }
+
+  @Override
+  public int size() {
+    if (cols == null) {
+      return super.size();
+    }
+    return width;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    if (cols == null) {
+      return super.isEmpty();
+    }
+    return width == 0;
+  }
+
+  @Override
+  public Cell get(int index) {
+    if (cols == null) {
+      return super.get(index);
+    }
+    if ((index < 0) || (index >= width)) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + width);
+    }
+    if (cells.length == width) {
+      // All cells are populated.
+      return cells[index];
+    }
+    int i = Arrays.binarySearch(cols, index);
+    if (i < 0) {
+      return Cell.EMPTY;
+    }
+    return cells[i];
+  }
+
+  @Override
+  public Cell getFirst() {
+    if (isEmpty()) {
+      throw new NoSuchElementException();
+    }
+    return get(0);
+  }
+
+  @Override
+  public Cell getLast() {
+    if (isEmpty()) {
+      throw new NoSuchElementException();
+    }
+    return get(size() - 1);
+  }
+
+  @Override
+  public Iterator<Cell> iterator() {
+    if (cols == null) {
+      return super.iterator();
+    }
+    return new CellList().iterator();
+  }
+
+  @Override
+  public ListIterator<Cell> listIterator() {
+    if (cols == null) {
+      return super.listIterator();
+    }
+    return new CellList().listIterator();
+  }
+
+  @Override
+  public ListIterator<Cell> listIterator(int index) {
+    if (cols == null) {
+      return super.listIterator(index);
+    }
+    return new CellList().listIterator(index);
+  }
+
+  @Override
+  public Spliterator<Cell> spliterator() {
+    if (cols == null) {
+      return super.spliterator();
+    }
+    return new CellList().spliterator();
+  }
+
+  @Override
+  public void forEach(Consumer<? super Cell> action) {
+    if (cols == null) {
+      super.forEach(action);
+      return;
+    }
+    new CellList().forEach(action);
+  }
+
+  @Override
+  public List<Cell> subList(int fromIndex, int toIndex) {
+    if (cols == null) {
+      return super.subList(fromIndex, toIndex);
+    }
+    return new CellList().subList(fromIndex, toIndex);
+  }
+
+  @Override
+  public Object[] toArray() {
+    if (cols == null) {
+      return super.toArray();
+    }
+    return new CellList().toArray();
+  }
+
+  @Override
+  public <T> T[] toArray(T[] a) {
+    if (cols == null) {
+      return super.toArray(a);
+    }
+    return new CellList().toArray(a);
+  }
+
+  @Override
+  public boolean contains(Object o) {
+    return indexOf(o) >= 0;
+  }
+
+  @Override
+  public int indexOf(Object o) {
+    if (cols == null) {
+      return super.indexOf(o);
+    }
+    return new CellList().indexOf(o);
+  }
+
+  @Override
+  public int lastIndexOf(Object o) {
+    if (cols == null) {
+      return super.lastIndexOf(o);
+    }
+    return new CellList().lastIndexOf(o);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (cols == null) {
+      return super.equals(o);
+    }
+    return new CellList().equals(o);
+  }
+
+  @Override
+  public int hashCode() {
+    if (cols == null) {
+      return super.hashCode();
+    }
+    return new CellList().hashCode();
+  }
+
+  @Override
+  public boolean add(Cell e) {
+    toList();
+    return super.add(e);
+  }
+
+  @Override
+  public void add(int index, Cell element) {
+    toList();
+    super.add(index, element);
+  }
+
+  @Override
+  public void addFirst(Cell e) {
+    add(0, e);
+  }
+
+  @Override
+  public void addLast(Cell e) {
+    add(e);
+  }
+
+  @Override
+  public boolean addAll(Collection<? extends Cell> c) {
+    toList();
+    return super.addAll(c);
+  }
+
+  @Override
+  public boolean addAll(int index, Collection<? extends Cell> c) {
+    toList();
+    return super.addAll(index, c);
+  }
+
+  @Override
+  public Cell set(int index, Cell element) {
+    toList();
+    return super.set(index, element);
+  }
+
+  @Override
+  public Cell remove(int index) {
+    toList();
+    return super.remove(index);
+  }
+
+  @Override
+  public Cell removeFirst() {
+    if (isEmpty()) {
+      throw new NoSuchElementException();
+    }
+    return remove(0);
+  }
+
+  @Override
+  public Cell removeLast() {
+    if (isEmpty()) {
+      throw new NoSuchElementException();
+    }
+    return remove(size() - 1);
+  }
+
+  @Override
+  public boolean remove(Object o) {
+    toList();
+    return super.remove(o);
+  }
+
+  @Override
+  public boolean removeAll(Collection<?> c) {
+    toList();
+    return super.removeAll(c);
+  }
+
+  @Override
+  public boolean retainAll(Collection<?> c) {
+    toList();
+    return super.retainAll(c);
+  }
+
+  @Override
+  public boolean removeIf(Predicate<? super Cell> filter) {
+    toList();
+    return super.removeIf(filter);
+  }
+
+  @Override
+  public void replaceAll(UnaryOperator<Cell> operator) {
+    toList();
+    super.replaceAll(operator);
+  }
+
+  @Override
+  public void sort(Comparator<? super Cell> c) {
+    toList();
+    super.sort(c);
+  }
+
+  @Override
+  public void clear() {
+    toList();
+    super.clear();
+  }
+
+  @Override
+  public Object clone() {
+    if (!frozen) {
+      toList();
+    }
+    // The frozen arrays are shared.
+    return super.clone();
+  }
+
+  /**
+   * Converts the row to the ordinary list of the cells.
+   */
+  private void toList() {
+    if (cols == null) {
+      return;
+    }
+    if (frozen) {
+      throw new UnsupportedOperationException("The frozen row cannot be modified");
+    }
+    int[] sparseCols = cols;
+    Cell[] sparseCells = cells;
+    cols = null;
+    cells = null;
+    super.ensureCapacity(width);
+    int i = 0;
+    for (int j = 0; j < width; j++) {
+      if ((i < sparseCols.length) && (sparseCols[i] == j)) {
+        super.add(sparseCells[i++]);
+      } else {
+        super.add(Cell.EMPTY);
+      }
+    }
+  }
+
+  @Override
+  long estimateSize() {
+    if (cols == null) {
+      return super.estimateSize();
+    }
+    long size = 72 + 8L * cells.length;
+    for (int i = 0; i < cells.length; i++) {
+      size += cells[i].estimateSize();
+    }
+    return size;
+  }
+
+  /**
+   * Serialized as an ordinary SheetRow.
+   */
+  private Object writeReplace() {
+    SheetRow row = new SheetRow();
+    row.addAll(this);
+    return row;
+  }
+
+  /**
+   * The sparse cells as a list view. The modifications are made to the row.
+   * It is created for each call, so that the row does not hold it.
+   */
+  private class CellList extends AbstractList<Cell> {
+    @Override
+    public Cell get(int index) {
+      return SparseSheetRow.this.get(index);
+    }
+
+    @Override
+    public int size() {
+      return SparseSheetRow.this.size();
+    }
+
+    @Override
+    public Cell set(int index, Cell element) {
+      return SparseSheetRow.this.set(index, element);
+    }
+
+    @Override
+    public void add(int index, Cell element) {
+      SparseSheetRow.this.add(index, element);
+    }
+
+    @Override
+    public Cell remove(int index) {
+      return SparseSheetRow.this.remove(index);
+    }
+  }
+
+  /**
+   * Builds the rows from the populated cells. The row is sparse if less than
+   * half of the cells are populated. The builder is reused for the rows of a
+   * sheet and is not thread-safe.
+   */
+  static class Builder {
+    private int[] cols = new int[16];
+    private Cell[] cells = new Cell[16];
+    private int count;
+
+    /**
+     * Makes room for the cells of a row not to grow the buffers while adding.
+     *
+     * @param capacity
+     *          the number of the cells
+     */
+    void ensureCapacity(int capacity) {
+      if (capacity > cols.length) {
+        cols = Arrays.copyOf(cols, capacity);
+        cells = Arrays.copyOf(cells, capacity);
+      }
+    }
+
+    /**
+     * Adds the populated cell. The cells must be added in the column order.
+     *
+     * @param colIndex
+     *          the column index (0-)
+     * @param cell
+     *          the cell
+     */
+    void add(int colIndex, Cell cell) {
+      if (count == cols.length) {
+        cols = Arrays.copyOf(cols, count * 2);
+        cells = Arrays.copyOf(cells, count * 2);
+      }
+      cols[count] = colIndex;
+      cells[count] = cell;
+      count++;
+    }
+
+    /**
+     * Returns the row of the added cells, and clears the builder for the next
+     * row.
+     *
+     * @param width
+     *          the number of the cells of the row
+     * @return the row
+     */
+    SheetRow build(int width) {
+      SheetRow row;
+      if (count * 2 < width) {
+        row = new SparseSheetRow(width, Arrays.copyOf(cols, count), Arrays.copyOf(cells, count), false);
+      } else {
+        row = new SheetRow();
+        row.ensureCapacity(width);
+        int i = 0;
+        for (int j = 0; j < width; j++) {
+          if ((i < count) && (cols[i] == j)) {
+            row.add(cells[i++]);
+          } else {
+            row.add(Cell.EMPTY);
+          }
+        }
+      }
+      Arrays.fill(cells, 0, count, null);
+      count = 0;
+      return row;
+    }
+
+    /**
+     * Returns the frozen row of the added cells, and clears the builder for the
+     * next row. The populated cells are kept in the arrays of the exact size
+     * regardless of the density, and without the column indexes if all cells
+     * are populated.
+     *
+     * @param width
+     *          the number of the cells of the row
+     * @return the row
+     */
+    SheetRow buildFrozen(int width) {
+      SheetRow row;
+      if (count == width) {
+        row = new FrozenSheetRow(cells, count);
+      } else {
+        row = new SparseSheetRow(width, Arrays.copyOf(cols, count), Arrays.copyOf(cells, count), true);
+      }
+      Arrays.fill(cells, 0, count, null);
+      count = 0;
+      return row;
+    }
+  }
+
+}
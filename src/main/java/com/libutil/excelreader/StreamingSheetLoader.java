@@ -0,0 +1,523 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Takashi Harano
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.libutil.excelreader;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads the sheet values straight from the package parts with the XSSF event
+ * model, without building the XSSFWorkbook object.
+ */
+class StreamingSheetLoader {
+
+  private static final int PROGRESS_INTERVAL = 1000;
+
+  // The maximum number of the rows to allocate by the dimension of the sheet
+  private static final int MAX_PRESIZE_ROWS = 65536;
+
+  /**
+   * Reads an Excel sheet and returns it as a two-dimensional array.
+   *
+   * @param file
+   *          The Excel file
+   * @param sheetName
+   *          The sheet name
+   * @param lastRowNum
+   *          Last line to load (1-1048576) / 0 for auto detection
+   * @param lastCellNum
+   *          Last column to load (1-16384) / 0 for auto detection
+   * @param columns
+   *          The flags of the columns to load / null for all columns
+   * @param lazy
+   *          true to resolve the values, formulas and colors of the cells when
+   *          they are accessed
+   * @return Two-dimensional array of read contents
+   * @throws IOException
+   *           If an I/O error occurs
+   */
+  static SheetValues loadSheetValues(File file, String sheetName, int lastRowNum, int lastCellNum, boolean[] columns, boolean lazy) throws IOException {
+    return loadSheetValues(file, sheetName, lastRowNum, lastCellNum, columns, lazy, null);
+  }
+
+  /**
+   * Reads an Excel sheet and returns it as a two-dimensional array.
+   *
+   * @param file
+   *          The Excel file
+   * @param sheetName
+   *          The sheet name
+   * @param lastRowNum
+   *          Last line to load (1-1048576) / 0 for auto detection
+   * @param lastCellNum
+   *          Last column to load (1-16384) / 0 for auto detection
+   * @param columns
+   *          The flags of the columns to load / null for all columns
+   * @param lazy
+   *          true to resolve the values, formulas and colors of the cells when
+   *          they are accessed
+   * @param listener
+   *          The listener to be notified of the start and completion of the
+   *          load / null
+   * @return Two-dimensional array of read contents
+   * @throws IOException
+   *           If an I/O error occurs
+   */
+  static SheetValues loadSheetValues(File file, String sheetName, int lastRowNum, int lastCellNum, boolean[] columns, boolean lazy, LoadingListener listener) throws IOException {
+    try (BookPackage book = BookPackage.open(file)) {
+      return loadSheetValues(book, sheetName, lastRowNum, lastCellNum, columns, lazy, listener);
+    }
+  }
+
+  /**
+   * Reads an Excel sheet on the executor.<br>
+   * The time limit starts when the task is submitted: the future is completed
+   * exceptionally with a TimeoutException when it passes, even if the task is
+   * still waiting in the executor or blocked in reading the file. The loading
+   * stops at the next row once the future is completed, by the time limit or by
+   * the caller.
+   *
+   * @param file
+   *          The Excel file
+   * @param sheetName
+   *          The sheet name
+   * @param lastRowNum
+   *          Last line to load (1-1048576) / 0 for auto detection
+   * @param lastCellNum
+   *          Last column to load (1-16384) / 0 for auto detection
+   * @param executor
+   *          The executor to run the loading task
+   * @param listener
+   *          The loading listener / null
+   * @param timeoutMillis
+   *          The time limit of the loading in milliseconds from now / 0 for no
+   *          limit
+   * @return The future of the values
+   */
+  static CompletableFuture<SheetValues> loadSheetValuesAsync(File file, String sheetName, int lastRowNum, int lastCellNum, Executor executor, LoadingListener listener, long timeoutMillis) {
+    CompletableFuture<SheetValues> future = new CompletableFuture<>();
+    if (timeoutMillis > 0) {
+      scheduleTimeout(future, "Loading timed out: file=" + file + " sheet=" + sheetName, timeoutMillis);
+    }
+    AsyncSheetValuesCollector collector = new AsyncSheetValuesCollector(sheetName, listener, future);
+    try {
+      executor.execute(() -> {
+        if (collector.isStopped()) {
+          return;
+        }
+        try (BookPackage book = BookPackage.open(file)) {
+          if (collector.isStopped()) {
+            return;
+          }
+          SheetValues values = loadSheetValues(book, sheetName, lastRowNum, lastCellNum, null, false, listener, collector);
+          if (!collector.isStopped()) {
+            future.complete(values);
+          }
+        } catch (Throwable e) {
+          future.completeExceptionally(e);
+        }
+      });
+    } catch (RuntimeException e) {
+      future.completeExceptionally(e);
+    }
+    return future;
+  }
+
+  /**
+   * Returns the executor to read the sheets asynchronously when the caller
+   * does not give one. The loading blocks on reading the file, so it runs on
+   * the dedicated daemon threads instead of the common ForkJoinPool.
+   *
+   * @return the executor
+   */
+  static Executor getDefaultAsyncExecutor() {
+    return AsyncExecutor.EXECUTOR;
+  }
+
+  /**
+   * Completes the future exceptionally with a TimeoutException after the time
+   * limit, unless it is completed before that.
+   */
+  private static void scheduleTimeout(CompletableFuture<?> future, String message, long timeoutMillis) {
+    ScheduledFuture<?> timeout = TimeoutScheduler.SCHEDULER.schedule(() -> {
+      future.completeExceptionally(new TimeoutException(message));
+    }, timeoutMillis, TimeUnit.MILLISECONDS);
+    // The timer task is removed when the loading finishes first.
+    future.whenComplete((values, e) -> timeout.cancel(false));
+  }
+
+  private static ThreadFactory newThreadFactory(String namePrefix) {
+    AtomicInteger count = new AtomicInteger();
+    return (r) -> {
+      Thread thread = new Thread(r, namePrefix + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+
+  /**
+   * Reads an Excel sheet and returns the values stored by column.
+   *
+   * @param file
+   *          The Excel file
+   * @param sheetName
+   *          The sheet name
+   * @param lastRowNum
+   *          Last line to load (1-1048576) / 0 for auto detection
+   * @param lastCellNum
+   *          Last column to load (1-16384) / 0 for auto detection
+   * @return The values of the sheet
+   * @throws IOException
+   *           If an I/O error occurs
+   */
+  static ColumnarSheetValues loadColumnarSheetValues(File file, String sheetName, int lastRowNum, int lastCellNum) throws IOException {
+    try (BookPackage book = BookPackage.open(file)) {
+      return loadColumnarSheetValues(book, sheetName, lastRowNum, lastCellNum);
+    }
+  }
+
+  /**
+   * Reads a sheet of the opened book and returns the values stored by column.
+   *
+   * @param book
+   *          The opened book
+   * @param sheetName
+   *          The sheet name
+   * @param lastRowNum
+   *          Last line to load (1-1048576) / 0 for auto detection
+   * @param lastCellNum
+   *          Last column to load (1-16384) / 0 for auto detection
+   * @return The values of the sheet
+   * @throws IOException
+   *           If an I/O error occurs
+   */
+  static ColumnarSheetValues loadColumnarSheetValues(BookPackage book, String sheetName, int lastRowNum, int lastCellNum) throws IOException {
+    ColumnarSheetValues values = new ColumnarSheetValues();
+    book.readSheet(sheetName, lastRowNum, lastCellNum, null, false, (rowIndex, row) -> {
+      values.addRow(row);
+      return true;
+    }, null);
+    values.trimToSize();
+    return values;
+  }
+
+  /**
+   * Reads an Excel sheet and passes the rows to the handler one by one.
+   *
+   * @param file
+   *          The Excel file
+   * @param sheetName
+   *          The sheet name
+   * @param lastRowNum
+   *          Last line to load (1-1048576) / 0 for auto detection
+   * @param lastCellNum
+   *          Last column to load (1-16384) / 0 for auto detection
+   * @param rowHandler
+   *          The handler to receive the rows
+   * @throws IOException
+   *           If an I/O error occurs
+   */
+  static void readSheet(File file, String sheetName, int lastRowNum, int lastCellNum, RowHandler rowHandler) throws IOException {
+    try (BookPackage book = BookPackage.open(file)) {
+      book.readSheet(sheetName, lastRowNum, lastCellNum, null, false, rowHandler, null);
+    }
+  }
+
+  /**
+   * Reads all sheets of the book in parallel on the executor.
+   *
+   * @param file
+   *          The Excel file
+   * @param executor
+   *          The executor to run the sheet loading tasks
+   * @param listener
+   *          The listener to be notified of the start and completion of each
+   *          sheet / null
+   * @return The map of the sheet name and the values in the order of the book
+   * @throws IOException
+   *           If an I/O error occurs
+   */
+  static Map<String, SheetValues> loadAllSheets(File file, Executor executor, LoadingListener listener) throws IOException {
+    try (BookPackage book = BookPackage.open(file)) {
+      return loadAllSheets(book, executor, listener);
+    }
+  }
+
+  /**
+   * Reads all sheets of the opened book in parallel on the executor.
+   *
+   * @param book
+   *          The opened book
+   * @param executor
+   *          The executor to run the sheet loading tasks
+   * @param listener
+   *          The listener to be notified of the start and completion of each
+   *          sheet / null
+   * @return The map of the sheet name and the values in the order of the book
+   * @throws IOException
+   *           If an I/O error occurs
+   */
+  static Map<String, SheetValues> loadAllSheets(BookPackage book, Executor executor, LoadingListener listener) throws IOException {
+    List<String> sheetNames = book.getSheetNames();
+    int sheetCount = sheetNames.size();
+    AtomicBoolean aborted = new AtomicBoolean(false);
+    @SuppressWarnings("unchecked")
+    FutureTask<SheetValues>[] tasks = new FutureTask[sheetCount];
+    for (int i = 0; i < sheetCount; i++) {
+      String sheetName = sheetNames.get(i);
+      tasks[i] = new FutureTask<>(() -> {
+        if (aborted.get()) {
+          return null;
+        }
+        return loadSheetValues(book, sheetName, 0, 0, null, false, listener);
+      });
+      try {
+        executor.execute(tasks[i]);
+      } catch (RejectedExecutionException e) {
+        // The package is closed by the caller, so wait for the submitted ones.
+        aborted.set(true);
+        awaitAll(tasks, i);
+        throw e;
+      }
+    }
+
+    // The calling thread runs the tasks that have not started yet by itself.
+    // It may be a worker of the executor, such as the common ForkJoinPool, and
+    // blocking it while the tasks wait in the queue could deadlock. The task
+    // does nothing when the executor runs it afterwards.
+    Map<String, SheetValues> sheets = new LinkedHashMap<>();
+    try {
+      for (int i = 0; i < sheetCount; i++) {
+        tasks[i].run();
+        sheets.put(sheetNames.get(i), tasks[i].get());
+      }
+    } catch (InterruptedException e) {
+      aborted.set(true);
+      awaitAll(tasks, sheetCount);
+      Thread.currentThread().interrupt();
+      throw new IOException("Loading interrupted: file=" + book.getFile(), e);
+    } catch (ExecutionException e) {
+      aborted.set(true);
+      awaitAll(tasks, sheetCount);
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new IOException("Failed to load the sheet: file=" + book.getFile(), cause);
+    }
+    return sheets;
+  }
+
+  /**
+   * Reads a sheet of the opened book and returns it as a two-dimensional array.
+   *
+   * @param book
+   *          The opened book
+   * @param sheetName
+   *          The sheet name
+   * @param lastRowNum
+   *          Last line to load (1-1048576) / 0 for auto detection
+   * @param lastCellNum
+   *          Last column to load (1-16384) / 0 for auto detection
+   * @param columns
+   *          The flags of the columns to load / null for all columns
+   * @param lazy
+   *          true to resolve the values, formulas and colors of the cells when
+   *          they are accessed
+   * @param listener
+   *          The loading listener / null
+   * @return Two-dimensional array of read contents
+   * @throws IOException
+   *           If an I/O error occurs
+   */
+  static SheetValues loadSheetValues(BookPackage book, String sheetName, int lastRowNum, int lastCellNum, boolean[] columns, boolean lazy, LoadingListener listener) throws IOException {
+    SheetValuesCollector collector = new SheetValuesCollector(sheetName, listener);
+    return loadSheetValues(book, sheetName, lastRowNum, lastCellNum, columns, lazy, listener, collector);
+  }
+
+  private static SheetValues loadSheetValues(BookPackage book, String sheetName, int lastRowNum, int lastCellNum, boolean[] columns, boolean lazy, LoadingListener listener, SheetValuesCollector collector) throws IOException {
+    if (listener != null) {
+      listener.onLoadStart(sheetName);
+    }
+    LoadingMetrics metrics = null;
+    if (listener instanceof LoadingMetricsListener) {
+      metrics = book.newMetrics();
+    }
+    book.readSheet(sheetName, lastRowNum, lastCellNum, columns, lazy, collector, metrics);
+    if (collector.isStopped()) {
+      return collector.rows;
+    }
+    collector.onComplete();
+    if (metrics != null) {
+      ((LoadingMetricsListener) listener).onLoadMetrics(sheetName, metrics);
+    }
+    if (listener != null) {
+      listener.onLoadComplete(sheetName);
+    }
+    return collector.rows;
+  }
+
+  /**
+   * Waits for the submitted tasks not to close the package under the running
+   * ones. The tasks that have not started yet are run here and return
+   * immediately.
+   */
+  private static void awaitAll(FutureTask<?>[] tasks, int count) {
+    boolean interrupted = false;
+    for (int i = 0; i < count; i++) {
+      tasks[i].run();
+      while (true) {
+        try {
+          tasks[i].get();
+          break;
+        } catch (InterruptedException e) {
+          interrupted = true;
+        } catch (ExecutionException e) {
+          break;
+        }
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Collects all rows into a SheetValues.
+   */
+  private static class SheetValuesCollector implements RowHandler, SheetContentHandler.DimensionListener {
+    final SheetValues rows = new SheetValues();
+    final String sheetName;
+    private final LoadingProgressListener progressListener;
+
+    SheetValuesCollector(String sheetName, LoadingListener listener) {
+      this.sheetName = sheetName;
+      if (listener instanceof LoadingProgressListener) {
+        this.progressListener = (LoadingProgressListener) listener;
+      } else {
+        this.progressListener = null;
+      }
+    }
+
+    @Override
+    public boolean onRow(int rowIndex, SheetRow row) {
+      rows.add(row);
+      if ((progressListener != null) && (rows.size() % PROGRESS_INTERVAL == 0)) {
+        progressListener.onProgress(sheetName, rows.size());
+      }
+      return true;
+    }
+
+    @Override
+    public void onDimension(int rowCount, int cellCount) {
+      // The trailing empty rows are not collected, so the range is an upper
+      // bound. A range beyond the limit is not trusted.
+      rows.ensureCapacity(Math.min(rowCount, MAX_PRESIZE_ROWS));
+    }
+
+    /**
+     * Returns whether the loading has been stopped before the end.
+     *
+     * @return true if stopped
+     */
+    boolean isStopped() {
+      return false;
+    }
+
+    /**
+     * Called when all rows have been collected.
+     */
+    void onComplete() {
+      if ((progressListener != null) && ((rows.size() == 0) || (rows.size() % PROGRESS_INTERVAL != 0))) {
+        progressListener.onProgress(sheetName, rows.size());
+      }
+    }
+  }
+
+  /**
+   * Collects the rows until the future is completed by the caller or the
+   * deadline has passed.
+   */
+  private static class AsyncSheetValuesCollector extends SheetValuesCollector {
+    private final CompletableFuture<SheetValues> future;
+
+    AsyncSheetValuesCollector(String sheetName, LoadingListener listener, CompletableFuture<SheetValues> future) {
+      super(sheetName, listener);
+      this.future = future;
+    }
+
+    @Override
+    public boolean onRow(int rowIndex, SheetRow row) {
+      if (isStopped()) {
+        return false;
+      }
+      return super.onRow(rowIndex, row);
+    }
+
+    @Override
+    boolean isStopped() {
+      // Completed by the caller or by the time limit
+      return future.isDone();
+    }
+  }
+
+  /**
+   * The executor for the asynchronous loading, created on first use.
+   */
+  private static class AsyncExecutor {
+    static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(newThreadFactory("excelreader-async-"));
+  }
+
+  /**
+   * The timer of the time limits, created on first use.
+   */
+  private static class TimeoutScheduler {
+    static final ScheduledThreadPoolExecutor SCHEDULER;
+
+    static {
+      SCHEDULER = new ScheduledThreadPoolExecutor(1, newThreadFactory("excelreader-timeout-"));
+      SCHEDULER.setRemoveOnCancelPolicy(true);
+    }
+  }
+
+}
@@ -0,0 +1,124 @@
+package com.libutil.excelreader.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.DataFormat;
+import org.apache.poi.xssf.usermodel.XSSFCell;
+import org.apache.poi.xssf.usermodel.XSSFRow;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import com.libutil.excelreader.ExcelLoader;
+import com.libutil.excelreader.SheetRow;
+import com.libutil.excelreader.SheetValues;
+
+/**
+ * Compares the values read by the streaming loaders with the ones read from
+ * the workbook.
+ */
+public class Tester2 {
+
+  public static final String SHEET_NAME = "Sheet1";
+
+  // The formats in the columns
+  private static final String[] FORMATS = { "General", "0", "#,##0.00", "0.00E+00", "0%", "0.0\\%", "# ?/?", "#,##0;[Red]-#,##0", "[>=1000]#,##0;0.00", "#,##0_);(#,##0);\"-\"_)", "yyyy/mm/dd", "h:mm:ss", "@" };
+
+  // The values in the rows
+  private static final double[] VALUES = { 0, 1, -1, 0.5, 1.005, 0.1 + 0.2, 1234.5678, -1234.5678, 123456789012345678d, 9007199254740992d, 12345678901234.567, 1e20, 1.23456789012345e-7, 45000.75, 3e6, -45000.75 };
+
+  public static void main(String args[]) {
+    Tester2 tester = new Tester2();
+    tester.test();
+  }
+
+  public void test() {
+    try {
+      File file = File.createTempFile("excelreader", ".xlsx");
+      try {
+        createBook(file);
+        _test(file.getPath());
+      } finally {
+        file.delete();
+      }
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  private void _test(String path) throws IOException {
+    SheetValues expected;
+    XSSFWorkbook workbook = ExcelLoader.openBook(path);
+    try {
+      expected = ExcelLoader.loadSheetValues(workbook, SHEET_NAME);
+    } finally {
+      workbook.close();
+    }
+
+    int count = 0;
+    count += compare("streaming", expected, ExcelLoader.loadSheetValues(path, SHEET_NAME));
+    count += compare("lazy", expected, ExcelLoader.loadSheetValues(path, SHEET_NAME, 0, 0, true));
+    Map<String, SheetValues> sheets = ExcelLoader.loadAllSheets(path);
+    count += compare("all sheets", expected, sheets.get(SHEET_NAME));
+    if (count > 0) {
+      throw new IllegalStateException(count + " values differ from the workbook");
+    }
+    System.out.println("The streaming values match the workbook");
+  }
+
+  private int compare(String name, SheetValues expected, SheetValues actual) {
+    int count = 0;
+    if (expected.size() != actual.size()) {
+      System.out.println(name + ": rows " + expected.size() + " != " + actual.size());
+      count++;
+    }
+    int rows = Math.min(expected.size(), actual.size());
+    for (int i = 1; i <= rows; i++) {
+      SheetRow expectedRow = expected.getRow(i);
+      SheetRow actualRow = actual.getRow(i);
+      for (int j = 1; j <= expectedRow.size(); j++) {
+        String expectedValue = expectedRow.getValue(j);
+        String actualValue = actualRow.getValue(j);
+        if (!expectedValue.equals(actualValue)) {
+          System.out.println(name + ": R" + i + "C" + j + " [" + expectedValue + "] != [" + actualValue + "]");
+          count++;
+        }
+        if (expectedRow.getCell(j).getLongValue() != actualRow.getCell(j).getLongValue()) {
+          System.out.println(name + ": R" + i + "C" + j + " long value " + expectedRow.getCell(j).getLongValue() + " != " + actualRow.getCell(j).getLongValue());
+          count++;
+        }
+      }
+    }
+    return count;
+  }
+
+  private void createBook(File file) throws IOException {
+    try (XSSFWorkbook workbook = new XSSFWorkbook()) {
+      DataFormat dataFormat = workbook.createDataFormat();
+      CellStyle[] styles = new CellStyle[FORMATS.length];
+      for (int i = 0; i < FORMATS.length; i++) {
+        styles[i] = workbook.createCellStyle();
+        styles[i].setDataFormat(dataFormat.getFormat(FORMATS[i]));
+      }
+
+      XSSFSheet sheet = workbook.createSheet(SHEET_NAME);
+      for (int i = 0; i < VALUES.length; i++) {
+        XSSFRow row = sheet.createRow(i);
+        for (int j = 0; j < FORMATS.length; j++) {
+          XSSFCell cell = row.createCell(j);
+          cell.setCellValue(VALUES[i]);
+          cell.setCellStyle(styles[j]);
+        }
+      }
+
+      try (OutputStream out = new FileOutputStream(file)) {
+        workbook.write(out);
+      }
+    }
+  }
+
+}
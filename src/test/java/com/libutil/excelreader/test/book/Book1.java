@@ -4,8 +4,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
-
+import com.libutil.excelreader.ExcelBook;
 import com.libutil.excelreader.ExcelLoader;
 import com.libutil.excelreader.LoadingListener;
 import com.libutil.excelreader.test.book.model.Sheet1ValuesMap;
@@ -69,14 +68,12 @@ public class Book1 {
   }
 
   private void loadBook1(String specFilePath) throws IOException {
-    XSSFWorkbook workbook = ExcelLoader.openBook(specFilePath);
-
-    Sheet1Parser parser = new Sheet1Parser();
-    this.sheet1ValuesMap = parser.parse(workbook);
+    try (ExcelBook book = ExcelLoader.openExcelBook(specFilePath)) {
+      Sheet1Parser parser = new Sheet1Parser();
+      this.sheet1ValuesMap = parser.parse(book);
 
-    this.sheetNames = ExcelLoader.getSheetNames(specFilePath);
-
-    workbook.close();
+      this.sheetNames = book.getSheetNames();
+    }
   }
 
   public Sheet1ValuesMap getAllValues() {
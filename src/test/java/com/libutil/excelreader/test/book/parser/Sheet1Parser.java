@@ -1,8 +1,11 @@
 package com.libutil.excelreader.test.book.parser;
 
+import java.io.IOException;
+
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
 import com.libutil.excelreader.Cell;
+import com.libutil.excelreader.ExcelBook;
 import com.libutil.excelreader.ExcelLoader;
 import com.libutil.excelreader.SheetRow;
 import com.libutil.excelreader.SheetValues;
@@ -36,7 +39,24 @@ public class Sheet1Parser {
   public Sheet1ValuesMap parse(XSSFWorkbook workbook) {
     // Open the book and read the values.
     SheetValues sheetRows = ExcelLoader.loadSheetValues(workbook, SHEET_NAME, DEFINITION_LAST_ROW, LAST_COL_INDEX);
+    return parse(sheetRows);
+  }
+
+  /**
+   * Parses the Sheet1
+   *
+   * @param book
+   *          the opened Excel book
+   * @return the values object map
+   * @throws IOException
+   *           If an I/O error occurs
+   */
+  public Sheet1ValuesMap parse(ExcelBook book) throws IOException {
+    SheetValues sheetRows = book.loadSheetValues(SHEET_NAME, DEFINITION_LAST_ROW, LAST_COL_INDEX);
+    return parse(sheetRows);
+  }
 
+  private Sheet1ValuesMap parse(SheetValues sheetRows) {
     Sheet1ValuesMap valuesMap = new Sheet1ValuesMap();
 
     // Loop the row of Sheet
@@ -0,0 +1,387 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Takashi Harano
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.libutil.excelreader.test.generator;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.FillPatternType;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.apache.poi.xssf.usermodel.XSSFColor;
+import org.apache.poi.xssf.usermodel.XSSFFont;
+
+/**
+ * Writes synthetic workbooks of any size for the scale and soak tests.<br>
+ * The contents are determined by the seed and the settings, so the same
+ * generator writes the same cells every time. The first column of each row is
+ * the row number and the other cells are drawn from the type mix.<br>
+ * <br>
+ * Usage:<br>
+ * java WorkbookGenerator out.xlsx rows=1000000 cols=20 sheets=1 seed=1
+ * fill=1.0 strings=500000 styles=0.1 formulas=0.05 mix=4,4,1,1,0
+ */
+public class WorkbookGenerator {
+
+  private static final int ROW_WINDOW = 1000;
+
+  private long seed = 1;
+  private int sheetCount = 1;
+  private int rowCount = 1000;
+  private int colCount = 10;
+  private double fillRatio = 1.0;
+  private int uniqueStrings = 1000;
+  private double styleDensity = 0;
+  private int styleCount = 64;
+  private double formulaRatio = 0;
+  private int[] typeWeights = {4, 4, 1, 1, 0};
+
+  public static void main(String[] args) throws IOException {
+    if (args.length == 0) {
+      System.out.println("Usage: WorkbookGenerator FILE [rows=N] [cols=N] [sheets=N] [seed=N] [fill=R] [strings=N] [styles=R] [styleCount=N] [formulas=R] [mix=NUMERIC,STRING,BOOLEAN,DATE,BLANK]");
+      return;
+    }
+    WorkbookGenerator generator = new WorkbookGenerator();
+    for (int i = 1; i < args.length; i++) {
+      String[] kv = args[i].split("=", 2);
+      if (kv.length < 2) {
+        throw new IllegalArgumentException("Invalid option: " + args[i]);
+      }
+      generator.setOption(kv[0], kv[1]);
+    }
+    long t0 = System.currentTimeMillis();
+    File file = generator.write(new File(args[0]));
+    long t1 = System.currentTimeMillis();
+    System.out.println(file + ": " + file.length() + " bytes (" + (t1 - t0) + "ms)");
+  }
+
+  private void setOption(String key, String value) {
+    switch (key) {
+      case "rows":
+        setRowCount(Integer.parseInt(value));
+        break;
+      case "cols":
+        setColCount(Integer.parseInt(value));
+        break;
+      case "sheets":
+        setSheetCount(Integer.parseInt(value));
+        break;
+      case "seed":
+        setSeed(Long.parseLong(value));
+        break;
+      case "fill":
+        setFillRatio(Double.parseDouble(value));
+        break;
+      case "strings":
+        setUniqueStrings(Integer.parseInt(value));
+        break;
+      case "styles":
+        setStyleDensity(Double.parseDouble(value));
+        break;
+      case "styleCount":
+        setStyleCount(Integer.parseInt(value));
+        break;
+      case "formulas":
+        setFormulaRatio(Double.parseDouble(value));
+        break;
+      case "mix":
+        String[] weights = value.split(",");
+        if (weights.length != 5) {
+          throw new IllegalArgumentException("mix needs 5 weights: " + value);
+        }
+        setTypeMix(Integer.parseInt(weights[0]), Integer.parseInt(weights[1]), Integer.parseInt(weights[2]), Integer.parseInt(weights[3]), Integer.parseInt(weights[4]));
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown option: " + key);
+    }
+  }
+
+  /**
+   * Sets the seed of the contents.
+   *
+   * @param seed
+   *          The seed
+   * @return this
+   */
+  public WorkbookGenerator setSeed(long seed) {
+    this.seed = seed;
+    return this;
+  }
+
+  /**
+   * Sets the number of the sheets. The sheets are named Sheet1, Sheet2, ...
+   *
+   * @param sheetCount
+   *          The number of the sheets
+   * @return this
+   */
+  public WorkbookGenerator setSheetCount(int sheetCount) {
+    this.sheetCount = sheetCount;
+    return this;
+  }
+
+  /**
+   * Sets the number of the rows of each sheet (1-1048576).
+   *
+   * @param rowCount
+   *          The number of the rows
+   * @return this
+   */
+  public WorkbookGenerator setRowCount(int rowCount) {
+    this.rowCount = rowCount;
+    return this;
+  }
+
+  /**
+   * Sets the number of the columns of each sheet (1-16384).
+   *
+   * @param colCount
+   *          The number of the columns
+   * @return this
+   */
+  public WorkbookGenerator setColCount(int colCount) {
+    this.colCount = colCount;
+    return this;
+  }
+
+  /**
+   * Sets the ratio of the cells to be written in a row. The cells that are
+   * not written do not exist in the sheet at all.
+   *
+   * @param fillRatio
+   *          0.0-1.0
+   * @return this
+   */
+  public WorkbookGenerator setFillRatio(double fillRatio) {
+    this.fillRatio = fillRatio;
+    return this;
+  }
+
+  /**
+   * Sets the number of the distinct strings, i.e. the size of the shared
+   * strings table.
+   *
+   * @param uniqueStrings
+   *          The number of the distinct strings
+   * @return this
+   */
+  public WorkbookGenerator setUniqueStrings(int uniqueStrings) {
+    this.uniqueStrings = uniqueStrings;
+    return this;
+  }
+
+  /**
+   * Sets the ratio of the cells to have a font and fill color.
+   *
+   * @param styleDensity
+   *          0.0-1.0
+   * @return this
+   */
+  public WorkbookGenerator setStyleDensity(double styleDensity) {
+    this.styleDensity = styleDensity;
+    return this;
+  }
+
+  /**
+   * Sets the number of the distinct colored styles.
+   *
+   * @param styleCount
+   *          The number of the styles
+   * @return this
+   */
+  public WorkbookGenerator setStyleCount(int styleCount) {
+    this.styleCount = styleCount;
+    return this;
+  }
+
+  /**
+   * Sets the ratio of the cells to be formulas.
+   *
+   * @param formulaRatio
+   *          0.0-1.0
+   * @return this
+   */
+  public WorkbookGenerator setFormulaRatio(double formulaRatio) {
+    this.formulaRatio = formulaRatio;
+    return this;
+  }
+
+  /**
+   * Sets the weights of the value types of the cells that are not formulas.
+   *
+   * @param numeric
+   *          The weight of the numbers
+   * @param string
+   *          The weight of the strings
+   * @param bool
+   *          The weight of the booleans
+   * @param date
+   *          The weight of the dates
+   * @param blank
+   *          The weight of the blank cells
+   * @return this
+   */
+  public WorkbookGenerator setTypeMix(int numeric, int string, int bool, int date, int blank) {
+    int[] weights = {numeric, string, bool, date, blank};
+    int total = 0;
+    for (int i = 0; i < weights.length; i++) {
+      if (weights[i] < 0) {
+        throw new IllegalArgumentException("Negative weight: " + weights[i]);
+      }
+      total += weights[i];
+    }
+    if (total == 0) {
+      throw new IllegalArgumentException("No type to generate");
+    }
+    this.typeWeights = weights;
+    return this;
+  }
+
+  /**
+   * Writes the workbook.
+   *
+   * @param file
+   *          The file to write
+   * @return The written file
+   * @throws IOException
+   *           If an I/O error occurs
+   */
+  public File write(File file) throws IOException {
+    File dir = file.getAbsoluteFile().getParentFile();
+    if (dir != null) {
+      dir.mkdirs();
+    }
+    SXSSFWorkbook workbook = new SXSSFWorkbook(null, ROW_WINDOW, true, true);
+    try {
+      CellStyle[] styles = createStyles(workbook);
+      CellStyle dateStyle = workbook.createCellStyle();
+      dateStyle.setDataFormat(workbook.getCreationHelper().createDataFormat().getFormat("yyyy-mm-dd"));
+      for (int i = 0; i < sheetCount; i++) {
+        Random random = new Random(seed * 31 + i);
+        Sheet sheet = workbook.createSheet("Sheet" + (i + 1));
+        writeSheet(sheet, random, styles, dateStyle);
+      }
+      try (OutputStream out = new FileOutputStream(file)) {
+        workbook.write(out);
+      }
+    } finally {
+      workbook.dispose();
+      workbook.close();
+    }
+    return file;
+  }
+
+  private void writeSheet(Sheet sheet, Random random, CellStyle[] styles, CellStyle dateStyle) {
+    for (int i = 0; i < rowCount; i++) {
+      Row row = sheet.createRow(i);
+      row.createCell(0).setCellValue(i + 1);
+      for (int j = 1; j < colCount; j++) {
+        if ((fillRatio < 1.0) && (random.nextDouble() >= fillRatio)) {
+          continue;
+        }
+        Cell cell = row.createCell(j);
+        if ((formulaRatio > 0) && (random.nextDouble() < formulaRatio)) {
+          cell.setCellFormula("A" + (i + 1) + "*" + j);
+        } else {
+          writeValue(cell, random, dateStyle);
+        }
+        if ((styles.length > 0) && (random.nextDouble() < styleDensity) && (cell.getCellStyle().getIndex() == 0)) {
+          cell.setCellStyle(styles[random.nextInt(styles.length)]);
+        }
+      }
+    }
+  }
+
+  private void writeValue(Cell cell, Random random, CellStyle dateStyle) {
+    switch (nextType(random)) {
+      case 0:
+        if (random.nextBoolean()) {
+          cell.setCellValue(random.nextInt(1000000));
+        } else {
+          cell.setCellValue(random.nextInt(10000000) / 100.0);
+        }
+        break;
+      case 1:
+        cell.setCellValue("str" + random.nextInt(uniqueStrings));
+        break;
+      case 2:
+        cell.setCellValue(random.nextBoolean());
+        break;
+      case 3:
+        // 1990-01-01 to 2026-12-31
+        cell.setCellValue(32874 + random.nextInt(13514));
+        cell.setCellStyle(dateStyle);
+        break;
+      default:
+        cell.setBlank();
+    }
+  }
+
+  private int nextType(Random random) {
+    int total = 0;
+    for (int i = 0; i < typeWeights.length; i++) {
+      total += typeWeights[i];
+    }
+    int n = random.nextInt(total);
+    for (int i = 0; i < typeWeights.length; i++) {
+      n -= typeWeights[i];
+      if (n < 0) {
+        return i;
+      }
+    }
+    return typeWeights.length - 1;
+  }
+
+  private CellStyle[] createStyles(SXSSFWorkbook workbook) {
+    if (styleDensity <= 0) {
+      return new CellStyle[0];
+    }
+    CellStyle[] styles = new CellStyle[styleCount];
+    Random random = new Random(seed);
+    for (int i = 0; i < styleCount; i++) {
+      XSSFFont font = (XSSFFont) workbook.createFont();
+      font.setColor(new XSSFColor(randomRGB(random), null));
+      XSSFCellStyle style = (XSSFCellStyle) workbook.createCellStyle();
+      style.setFont(font);
+      style.setFillForegroundColor(new XSSFColor(randomRGB(random), null));
+      style.setFillPattern(FillPatternType.SOLID_FOREGROUND);
+      styles[i] = style;
+    }
+    return styles;
+  }
+
+  private static byte[] randomRGB(Random random) {
+    byte[] rgb = new byte[3];
+    random.nextBytes(rgb);
+    return rgb;
+  }
+
+}